@@ -16,16 +16,27 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
 import cern.c2mon.daq.common.IEquipmentMessageSender;
 import cern.c2mon.daq.common.conf.equipment.IDataTagChanger;
 import cern.c2mon.daq.rest.address.RestAddressFactory;
 import cern.c2mon.daq.rest.address.RestGetAddress;
 import cern.c2mon.daq.rest.address.RestPostAddress;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics;
 import cern.c2mon.daq.rest.scheduling.GetScheduler;
 import cern.c2mon.daq.rest.scheduling.PostScheduler;
 import cern.c2mon.daq.rest.scheduling.RestScheduler;
+import cern.c2mon.daq.rest.scheduling.TagIndex;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
 import cern.c2mon.shared.common.datatag.SourceDataTag;
 import cern.c2mon.shared.common.datatag.address.HardwareAddress;
@@ -43,6 +54,7 @@ import cern.c2mon.shared.common.process.IEquipmentConfiguration;
  * refresh of all DataTags of this daq.
  * <p/>
  */
+@Slf4j
 public class RequestDelegator {
 
   /**
@@ -56,10 +68,28 @@ public class RequestDelegator {
   @Getter
   private PostScheduler postScheduler;
 
+  /**
+   * Index of all tags of this daq, which is kept up to date with every configuration change
+   */
+  private TagIndex tagIndex;
+
+  private RestDaqMetrics metrics;
+
   public RequestDelegator(IEquipmentMessageSender sender, IEquipmentConfiguration configuration) {
+    this(sender, configuration, new RestDaqProperties());
+  }
+
+  public RequestDelegator(IEquipmentMessageSender sender, IEquipmentConfiguration configuration, RestDaqProperties properties) {
+    this(sender, configuration, properties, RestDaqMetrics.NOOP);
+  }
+
+  public RequestDelegator(IEquipmentMessageSender sender, IEquipmentConfiguration configuration, RestDaqProperties properties,
+                          RestDaqMetrics metrics) {
     this.equipmentConfiguration = configuration;
-    this.getScheduler = new GetScheduler(sender, configuration);
-    this.postScheduler = new PostScheduler(sender, configuration);
+    this.metrics = metrics;
+    this.getScheduler = new GetScheduler(sender, configuration, properties, metrics);
+    this.postScheduler = new PostScheduler(sender, configuration, properties, metrics);
+    this.tagIndex = postScheduler.getTagIndex();
   }
 
   /**
@@ -73,23 +103,89 @@ public class RequestDelegator {
    */
   public void addDataTag(ISourceDataTag sourceDataTag) {
 
-    if (sourceDataTag.getAddressParameters() != null) {
-      SourceDataTag sdt = (SourceDataTag) sourceDataTag;
+    // Add HardwareAddress to the SourceDataTag values
+    HardwareAddress hardwareAddress = initHardwareAddress(sourceDataTag);
 
-      // Add HardwareAddress to the SourceDataTag values
-      HardwareAddress hardwareAddress = RestAddressFactory.createHardwareAddress(sdt.getAddressParameters());
-      sdt.setHardwareAddress(hardwareAddress);
+    // get the right scheduler for this DataTag and add the task to it
+    RestScheduler scheduler = getScheduler(hardwareAddress);
+    scheduler.addTask(sourceDataTag.getId());
+    tagIndex.put(sourceDataTag);
 
-      // get the right scheduler for this DataTag and add the task to it
-      RestScheduler scheduler = getScheduler(hardwareAddress);
-      scheduler.addTask(sourceDataTag.getId());
+  }
 
+  /**
+   * Sends the values, which have been received while the DataTag was
+   * auto-configured. Only POST DataTags can receive values.
+   *
+   * @param sourceDataTag The DataTag which has just been added.
+   */
+  public void replayPendingUpdates(ISourceDataTag sourceDataTag) {
+    if (sourceDataTag.getHardwareAddress() instanceof RestPostAddress) {
+      postScheduler.replayPendingUpdates(sourceDataTag.getId(), sourceDataTag.getName());
+    } else {
+      postScheduler.discardPendingUpdates(sourceDataTag.getName());
     }
-    else {
+  }
+
+  /**
+   * Adds all DataTags of the equipment at once. The HardwareAddresses are
+   * created in parallel and the tasks are registered in bulk. The POST tags
+   * and the tag index are set up first, so that POST messages are accepted
+   * before the GET polling is registered.
+   *
+   * @param sourceDataTags The DataTags which need to be added.
+   * @return The DataTags which could not be added, with the reason
+   */
+  public Map<ISourceDataTag, String> addDataTags(Collection<ISourceDataTag> sourceDataTags) {
+    long start = System.nanoTime();
+    Map<ISourceDataTag, String> failures = new ConcurrentHashMap<>();
+
+    List<ISourceDataTag> validTags = sourceDataTags.parallelStream()
+        .filter(sourceDataTag -> {
+          try {
+            getScheduler(initHardwareAddress(sourceDataTag));
+            return true;
+          } catch (IllegalArgumentException ex) {
+            failures.put(sourceDataTag, ex.getMessage());
+            return false;
+          }
+        })
+        .collect(Collectors.toList());
+    Map<Boolean, List<ISourceDataTag>> tagsByMode = validTags.stream()
+        .collect(Collectors.partitioningBy(sourceDataTag -> sourceDataTag.getHardwareAddress() instanceof RestPostAddress));
+    long parsed = System.nanoTime();
+
+    postScheduler.addTasks(tagsByMode.get(true));
+    validTags.forEach(tagIndex::put);
+    long postReady = System.nanoTime();
+    log.info("{} POST tags ready to receive messages", tagsByMode.get(true).size());
+
+    getScheduler.addTasks(tagsByMode.get(false));
+    long end = System.nanoTime();
+
+    metrics.startup("parsing", parsed - start);
+    metrics.startup("post", postReady - parsed);
+    metrics.startup("get", end - postReady);
+    log.info("Added {} of {} DataTags ({} GET, {} POST) in {} ms - address parsing: {} ms, POST registration: {} ms, GET registration: {} ms",
+        validTags.size(), sourceDataTags.size(), tagsByMode.get(false).size(), tagsByMode.get(true).size(),
+        TimeUnit.NANOSECONDS.toMillis(end - start), TimeUnit.NANOSECONDS.toMillis(parsed - start),
+        TimeUnit.NANOSECONDS.toMillis(postReady - parsed), TimeUnit.NANOSECONDS.toMillis(end - postReady));
+
+    return failures;
+  }
+
+  /**
+   * Creates the HardwareAddress out of the address parameters and attaches it to the DataTag
+   */
+  private static HardwareAddress initHardwareAddress(ISourceDataTag sourceDataTag) {
+    if (sourceDataTag.getAddressParameters() == null) {
       throw new IllegalArgumentException("Cant add DataTag to the DAQ without HardwareAddress information - " +
               "addressParameters are null.");
     }
 
+    HardwareAddress hardwareAddress = RestAddressFactory.createHardwareAddress(sourceDataTag.getAddressParameters());
+    ((SourceDataTag) sourceDataTag).setHardwareAddress(hardwareAddress);
+    return hardwareAddress;
   }
 
   /**
@@ -101,6 +197,7 @@ public class RequestDelegator {
 
     RestScheduler scheduler = getScheduler(sourceDataTag.getHardwareAddress());
     scheduler.removeTask(sourceDataTag.getId());
+    tagIndex.remove(sourceDataTag.getId());
 
   }
 
@@ -121,6 +218,7 @@ public class RequestDelegator {
       //delete the old task from the old scheduler
       RestScheduler scheduler = getScheduler(oldSdt.getHardwareAddress());
       scheduler.removeTask(tagId);
+      tagIndex.remove(tagId);
 
       // Add the new HardwareAddress to the SourceDataTag values
       HardwareAddress hardwareAddress = RestAddressFactory.createHardwareAddress(sdt.getAddressParameters());
@@ -129,6 +227,7 @@ public class RequestDelegator {
       // get the right scheduler for this DataTag and add the new task to it
       scheduler = getScheduler(hardwareAddress);
       scheduler.addTask(tagId);
+      tagIndex.put(sdt);
 
 
     }
@@ -149,11 +248,24 @@ public class RequestDelegator {
    */
   public void refreshDataTag(Long id) {
 
-    RestScheduler scheduler = getScheduler(equipmentConfiguration.getSourceDataTag(id).getHardwareAddress());
+    HardwareAddress hardwareAddress = tagIndex.getAddress(id);
+    if (hardwareAddress == null) {
+      hardwareAddress = equipmentConfiguration.getSourceDataTag(id).getHardwareAddress();
+    }
+
+    RestScheduler scheduler = getScheduler(hardwareAddress);
     scheduler.refreshDataTag(id);
 
   }
 
+  /**
+   * Stops the scheduling engines of both schedulers.
+   */
+  public void shutdown() {
+    getScheduler.shutdown();
+    postScheduler.shutdown();
+  }
+
   /**
    * HelperMethod to determine which Scheduler is used for the given HardwareAddress.
    *
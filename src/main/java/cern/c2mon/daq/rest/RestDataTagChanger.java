@@ -54,6 +54,9 @@ public class RestDataTagChanger implements IDataTagChanger {
       requestDelegator.addDataTag(sourceDataTag);
       changeReport.appendInfo("URL successful tested and added");
       changeReport.setState(CHANGE_STATE.SUCCESS);
+
+      // values received during the auto-configuration of the tag
+      requestDelegator.replayPendingUpdates(sourceDataTag);
     }
     catch (IllegalArgumentException ex) {
       log.warn("DataTag #{} not configurable - Reason: {}", sourceDataTag.getId(), ex.getMessage());
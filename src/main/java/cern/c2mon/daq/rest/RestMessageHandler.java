@@ -16,6 +16,8 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest;
 
+import java.util.Map;
+
 import org.springframework.web.client.RestClientException;
 
 import lombok.extern.slf4j.Slf4j;
@@ -25,6 +27,8 @@ import cern.c2mon.daq.common.conf.equipment.IDataTagChanger;
 import cern.c2mon.daq.rest.config.RestDaqProperties;
 import cern.c2mon.daq.rest.config.TagConfigurer;
 import cern.c2mon.daq.rest.controller.RestController;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics;
+import cern.c2mon.daq.rest.webaccess.RESTConnector;
 import cern.c2mon.daq.tools.equipmentexceptions.EqIOException;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
 import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
@@ -45,6 +49,11 @@ public class RestMessageHandler extends EquipmentMessageHandler {
    */
   private RequestDelegator requestDelegator;
 
+  /**
+   * Creates the unknown tags, if auto-configuration is enabled
+   */
+  private TagConfigurer tagConfigurer;
+
   @Override
   public void connectToDataSource() throws EqIOException {
     log.trace("enter connectToDataSource()");
@@ -52,29 +61,31 @@ public class RestMessageHandler extends EquipmentMessageHandler {
     // class initialization
     RestController restController = getContext().getBean(RestController.class);
     RestDaqProperties properties = getContext().getBean(RestDaqProperties.class);
+    RestDaqMetrics metrics = getContext().getBean(RestDaqMetrics.class);
+    RESTConnector.configure(properties.getHttp());
     
-    requestDelegator = new RequestDelegator(getEquipmentMessageSender(), getEquipmentConfiguration());
+    requestDelegator = new RequestDelegator(getEquipmentMessageSender(), getEquipmentConfiguration(), properties, metrics);
     restController.setPostScheduler(requestDelegator.getPostScheduler());
     
     if (properties.isAutoConfiguration()) {
       // add the Scheduler and TagConfigurer to the controller
-      restController.setTagConfigurer(new TagConfigurer(getEquipmentConfiguration().getName()));
+      tagConfigurer = new TagConfigurer(getEquipmentConfiguration().getName());
+      tagConfigurer.setMetrics(metrics);
+      tagConfigurer.setBatchWindow(properties.getAutoConfigurationWindow());
+      restController.setTagConfigurer(tagConfigurer);
+      restController.setAsyncAutoConfiguration(properties.isAsyncAutoConfiguration());
     }
 
     IDataTagChanger dataTagChanger = new RestDataTagChanger(getEquipmentMessageSender(), requestDelegator);
     getEquipmentConfigurationHandler().setDataTagChanger(dataTagChanger);
 
     // Adding DataTags to the equipment
-    for (ISourceDataTag dataTag : getEquipmentConfiguration().getSourceDataTags().values()) {
-      try {
-        requestDelegator.addDataTag(dataTag);
-      }
-      catch (IllegalArgumentException ex) {
-        log.warn("DataTag {} (#{}) not configurable - Reason: {}", dataTag.getName(), dataTag.getId(), ex.getMessage());
-        getEquipmentMessageSender().update(dataTag.getId(), 
-            new SourceDataTagQuality(SourceDataTagQualityCode.INCORRECT_NATIVE_ADDRESS, "DataTag not configurable - Reason: " + ex.getMessage()));
-      }
-    }
+    Map<ISourceDataTag, String> failures = requestDelegator.addDataTags(getEquipmentConfiguration().getSourceDataTags().values());
+    failures.forEach((dataTag, reason) -> {
+      log.warn("DataTag {} (#{}) not configurable - Reason: {}", dataTag.getName(), dataTag.getId(), reason);
+      getEquipmentMessageSender().update(dataTag.getId(), 
+          new SourceDataTagQuality(SourceDataTagQualityCode.INCORRECT_NATIVE_ADDRESS, "DataTag not configurable - Reason: " + reason));
+    });
 
     getEquipmentMessageSender().confirmEquipmentStateOK("successfully connected");
     log.info("connectToDataSource succeeded");
@@ -92,6 +103,10 @@ public class RestMessageHandler extends EquipmentMessageHandler {
         log.warn("Problem caused by disconnecting: " + ex.getMessage());
       }
     }
+    requestDelegator.shutdown();
+    if (tagConfigurer != null) {
+      tagConfigurer.shutdown();
+    }
 
     log.info("Equipment disconnected.");
     log.trace("Leaving disconnectFromDataSource method.");
@@ -18,6 +18,8 @@ package cern.c2mon.daq.rest.address;
 
 import java.util.Map;
 
+import com.jayway.jsonpath.InvalidPathException;
+
 import cern.c2mon.shared.common.datatag.SourceDataTag;
 import cern.c2mon.shared.common.datatag.address.HardwareAddress;
 
@@ -78,7 +80,12 @@ public abstract class RestAddressFactory {
       Integer frequency = extractGetFrequency(addressParameters);
       String jsonPathExpression = extractJsonPath(addressParameters);
 
-      return new RestGetAddress(url, frequency, jsonPathExpression);
+      try {
+        return new RestGetAddress(url, frequency, jsonPathExpression);
+      } catch (InvalidPathException e) {
+        throw new IllegalArgumentException("HardwareAddress invalid. \"jsonPathExpression\" - " + jsonPathExpression
+            + " cannot be compiled: " + e.getMessage(), e);
+      }
 
     } else if (mode == RestMode.POST) {
       // extract fields for the receive mode
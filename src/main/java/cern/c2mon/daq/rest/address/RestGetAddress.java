@@ -16,6 +16,9 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest.address;
 
+import com.jayway.jsonpath.JsonPath;
+
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -60,6 +63,15 @@ public class RestGetAddress extends HardwareAddressImpl {
    */
   private String jsonPathExpression;
 
+  /**
+   * The compiled form of the jsonPathExpression, or <code>null</code> if no
+   * expression is defined. Compiling the expression once avoids to tokenize
+   * it again with every request.
+   */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private transient JsonPath jsonPath;
+
   /**
    * Constructor which is used by the {@link RestAddressFactory} to create an
    * instance of this class.
@@ -73,7 +85,32 @@ public class RestGetAddress extends HardwareAddressImpl {
     super();
     this.url = url;
     this.frequency = frequency;
+    setJsonPathExpression(jsonPathExpression);
+  }
+
+  /**
+   * Sets the JsonPath expression and compiles it
+   *
+   * @param jsonPathExpression The JsonPath expression for extracting data of the get request.
+   * @throws com.jayway.jsonpath.InvalidPathException if the expression is not valid
+   */
+  public void setJsonPathExpression(String jsonPathExpression) {
+    this.jsonPath = jsonPathExpression != null ? JsonPath.compile(jsonPathExpression) : null;
     this.jsonPathExpression = jsonPathExpression;
   }
 
+  /**
+   * Returns the compiled JsonPath expression. The expression is compiled
+   * lazily, if the address has been deserialized or its fields have been set
+   * without the setter, e.g. from the XML representation.
+   *
+   * @return The compiled JsonPath expression or <code>null</code>, if no expression is defined
+   */
+  public JsonPath getJsonPath() {
+    if (jsonPath == null && jsonPathExpression != null) {
+      jsonPath = JsonPath.compile(jsonPathExpression);
+    }
+    return jsonPath;
+  }
+
 }
@@ -16,16 +16,21 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.Getter;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
 
 import cern.c2mon.client.core.service.ConfigurationService;
 import cern.c2mon.daq.config.DaqProperties;
 import cern.c2mon.daq.rest.RestMessageHandler;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics;
 
 /**
  * Class is called at the very beginning to configure a new process in C2MON, if not yet done.
@@ -34,6 +39,7 @@ import cern.c2mon.daq.rest.RestMessageHandler;
  */
 @Configuration
 @EnableConfigurationProperties(RestDaqProperties.class)
+@PropertySource("classpath:rest-daq-defaults.properties")
 public class ConfigurationInitializer {
 
   @Getter
@@ -49,6 +55,17 @@ public class ConfigurationInitializer {
     return () -> configureProcessAndEquipment(context);
   }
 
+  /**
+   * The meters of the REST DAQ, which are registered in the meter registry of
+   * the actuator. A simple registry is used, if the actuator is not active.
+   * @param registry The meter registry of the Spring context
+   * @return the REST DAQ meters
+   */
+  @Bean
+  public RestDaqMetrics restDaqMetrics(ObjectProvider<MeterRegistry> registry) {
+    return new RestDaqMetrics(registry.getIfAvailable(SimpleMeterRegistry::new));
+  }
+
   private void configureProcessAndEquipment(ApplicationContext context) {
     if (!isAutoConfiguration(context)) {
       return;
@@ -20,6 +20,10 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import lombok.Data;
 
+import cern.c2mon.daq.rest.scheduling.GetScheduler;
+import cern.c2mon.daq.rest.scheduling.PendingUpdateBuffer;
+import cern.c2mon.daq.rest.scheduling.SchedulingEngine;
+
 /**
  * Contains additional properties for the REST DAQ
  * @author Matthias Braeger
@@ -30,4 +34,165 @@ public class RestDaqProperties {
   
   /** Enables/disables auto-configuration feature of REST DAQ */
   private boolean autoConfiguration = true;
+
+  /** Time in milliseconds during which unknown tag names are collected for one bulk auto-configuration request */
+  private long autoConfigurationWindow = 50;
+
+  /**
+   * Messages of unknown tags are accepted immediately (202) and buffered until the
+   * tag has been auto-configured, instead of waiting for the configuration
+   */
+  private boolean asyncAutoConfiguration = false;
+
+  /**
+   * Runs the HTTP request handling of the embedded Tomcat and the blocking GET
+   * requests on virtual threads. Requires Java 21 or later, otherwise platform
+   * threads are used.
+   */
+  private boolean virtualThreads = false;
+
+  /** Settings of the buffer for the values of tags, which are auto-configured asynchronously */
+  private PendingUpdates pendingUpdates = new PendingUpdates();
+
+  /** Settings of the scheduling engine used by the GET and POST schedulers */
+  private Scheduler scheduler = new Scheduler();
+
+  /** Settings of the periodic GET polling */
+  private Get get = new Get();
+
+  /** Settings of the POST tags */
+  private Post post = new Post();
+
+  /** Settings of the pooled HTTP client used for the GET requests */
+  private Http http = new Http();
+
+  /** Settings of the WebSocket ingestion channel */
+  private Websocket websocket = new Websocket();
+
+  /** Settings of the decompression of compressed POST bodies */
+  private Decompression decompression = new Decompression();
+
+  @Data
+  public static class Scheduler {
+
+    /** The scheduling engine implementation, either TIMER or HASHED_WHEEL */
+    private SchedulingEngine.Type engine = SchedulingEngine.Type.HASHED_WHEEL;
+
+    /** Duration of a tick of the hashed wheel in milliseconds. Defines the timing precision. */
+    private long tickDuration = 100;
+
+    /** Number of buckets of the hashed wheel */
+    private int ticksPerWheel = 512;
+  }
+
+  @Data
+  public static class Get {
+
+    /** Maximum number of GET requests in flight for the whole equipment */
+    private int maxConcurrentRequests = 64;
+
+    /** Maximum number of GET requests in flight to the same host */
+    private int maxConcurrentRequestsPerHost = 8;
+
+    /** Sends conditional requests (If-None-Match, If-Modified-Since) and skips unchanged resources */
+    private boolean conditionalRequests = true;
+
+    /** Suppresses polled values, which did not change or only within the value deadband of the tag */
+    private boolean filterUnchangedValues = false;
+
+    /** Interval in milliseconds after which an unchanged value is sent again to the server */
+    private long heartbeatInterval = 60_000;
+
+    /** Number of consecutive failed requests to a host, after which its requests are suspended. 0 disables the circuit breaker. */
+    private int circuitBreakerThreshold = 3;
+
+    /** Time in milliseconds after which a suspended host is probed for the first time */
+    private long circuitBreakerInitialBackoff = 5_000;
+
+    /** Maximum time in milliseconds between two probes of a suspended host. The backoff doubles with every failed probe. */
+    private long circuitBreakerMaxBackoff = 300_000;
+
+    /** Spreads the first requests of the tags over the period, either NONE, HASH or JITTER */
+    private GetScheduler.PhaseSpread phaseSpread = GetScheduler.PhaseSpread.NONE;
+  }
+
+  @Data
+  public static class Post {
+
+    /** Interval in milliseconds in which the POST tags are checked for expiration. Defines the timing precision. */
+    private long freshnessCheckInterval = 100;
+
+    /** Maximum number of unknown tag names, which are remembered to reject their messages without lookup */
+    private int maxUnknownNames = 10_000;
+  }
+
+  @Data
+  public static class PendingUpdates {
+
+    /** Maximum number of buffered values */
+    private int capacity = 10_000;
+
+    /** Maximum number of buffered values per tag */
+    private int capacityPerTag = 100;
+
+    /** Time in milliseconds after which a buffered value is dropped, if the tag has not been configured */
+    private long expiry = 60_000;
+
+    /** Either DROP_OLDEST or REJECT, if the buffer is full */
+    private PendingUpdateBuffer.OverflowPolicy overflowPolicy = PendingUpdateBuffer.OverflowPolicy.DROP_OLDEST;
+  }
+
+  @Data
+  public static class Decompression {
+
+    /** Accepts request bodies with <code>Content-Encoding: gzip</code> or <code>deflate</code> */
+    private boolean enabled = true;
+
+    /** Maximum size in bytes of a decompressed request body */
+    private long maxSize = 104_857_600;
+
+    /** Maximum ratio between the decompressed and the compressed size of a request body */
+    private int maxRatio = 100;
+  }
+
+  @Data
+  public static class Websocket {
+
+    /** Maximum time in milliseconds, for which the acknowledgement of a received update is delayed */
+    private long ackInterval = 100;
+
+    /** Maximum number of updates, which are acknowledged with one message */
+    private int ackBatchSize = 1_000;
+
+    /** Maximum size in bytes of a received text message */
+    private int maxMessageSize = 1_048_576;
+  }
+
+  @Data
+  public static class Http {
+
+    /** Maximum number of pooled connections */
+    private int maxConnections = 200;
+
+    /** Maximum number of pooled connections per host */
+    private int maxConnectionsPerRoute = 20;
+
+    /** Timeout in milliseconds until a connection is established */
+    private int connectTimeout = 5_000;
+
+    /** Socket timeout in milliseconds while waiting for data */
+    private int readTimeout = 10_000;
+
+    /** Timeout in milliseconds to obtain a connection from the pool */
+    private int connectionRequestTimeout = 5_000;
+
+    /** Keep-alive duration in milliseconds, if the server does not announce one */
+    private long keepAlive = 30_000;
+
+    /** Time in milliseconds after which idle connections are evicted from the pool */
+    private long idleTimeout = 60_000;
+
+    /** Inactivity period in milliseconds after which a pooled connection is validated before reuse */
+    private int validateAfterInactivity = 2_000;
+  }
 }
@@ -16,15 +16,26 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest.config;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 
 import cern.c2mon.client.core.C2monServiceGateway;
 import cern.c2mon.client.core.service.ConfigurationService;
 import cern.c2mon.daq.rest.RestTagUpdate;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics;
 import cern.c2mon.shared.client.configuration.ConfigConstants.Status;
 import cern.c2mon.shared.client.configuration.ConfigurationReport;
 import cern.c2mon.shared.client.configuration.api.tag.DataTag;
@@ -34,6 +45,11 @@ import cern.c2mon.shared.common.type.TypeConverter;
 
 /**
  * Provides methods to configure or update on-the-fly tags in C2MON
+ * <p/>
+ * Tags requested with {@link #requestTag(RestTagUpdate)} are created by a
+ * pipeline, which deduplicates the creations in flight per tag name and
+ * collects the new names over a short window, so that they are created with a
+ * single bulk configuration request.
  * 
  * @author Matthias Braeger
  */
@@ -44,6 +60,38 @@ public class TagConfigurer {
 
   private final String equipmentName;
 
+  /**
+   * Records the duration of the configuration requests
+   */
+  @Setter
+  private RestDaqMetrics metrics = RestDaqMetrics.NOOP;
+
+  /**
+   * Time in milliseconds during which new tag names are collected for one bulk configuration request
+   */
+  @Setter
+  private long batchWindow = 50;
+
+  /**
+   * Guards the pending creations and the next batch
+   */
+  private final Object lock = new Object();
+
+  /**
+   * The results of the creations in flight per tag name
+   */
+  private final Map<String, CompletableFuture<Boolean>> pendingCreations = new HashMap<>();
+
+  /**
+   * The tags of the next bulk configuration request
+   */
+  private List<RestTagUpdate> batch = new ArrayList<>();
+
+  /**
+   * Sends the bulk configuration requests. Created with the first request.
+   */
+  private ScheduledExecutorService batchExecutor;
+
   /**
    * Default constructor
    * 
@@ -76,8 +124,43 @@ public class TagConfigurer {
     }
 
     log.info("Creating new tag with name {} ...", tag.getName());
-    ConfigurationReport report = configurationService.createDataTag(equipmentName, createConfiguration(tag));
+    long start = System.nanoTime();
+    boolean success = isSuccessful(configurationService.createDataTag(equipmentName, createConfiguration(tag)));
+    metrics.autoConfiguration("createTag", success, System.nanoTime() - start);
+
+    return success;
+  }
+
+  /**
+   * Creates on the fly several tags in C2MON with a single configuration request
+   *
+   * @param tags
+   *          The Rest POST messages of the tags to create. There must be only
+   *          one message per tag name.
+   * @return <code>true</code>, if configuration was successful
+   */
+  public boolean createTags(List<RestTagUpdate> tags) {
+    List<RestTagUpdate> validTags = tags.stream()
+        .filter(tag -> tag.getName() != null && !tag.getName().isEmpty())
+        .collect(Collectors.toList());
+
+    if (validTags.isEmpty()) {
+      return false;
+    }
+    if (validTags.size() == 1) {
+      return createTag(validTags.get(0));
+    }
+
+    log.info("Creating {} new tags ...", validTags.size());
+    List<DataTag> configurations = validTags.stream().map(this::createConfiguration).collect(Collectors.toList());
+    long start = System.nanoTime();
+    boolean success = isSuccessful(configurationService.createDataTags(equipmentName, configurations));
+    metrics.autoConfiguration("createTags", success, System.nanoTime() - start);
+
+    return success;
+  }
 
+  private static boolean isSuccessful(ConfigurationReport report) {
     if (report == null || report.getStatus() == null) {
       return false;
     }
@@ -85,6 +168,143 @@ public class TagConfigurer {
     return report.getStatus() == Status.OK;
   }
 
+  /**
+   * Requests the creation of a tag in C2MON. If the creation of a tag with
+   * the same name is already in flight, its result is shared. Otherwise the
+   * tag is created together with the other tags requested within the batch
+   * window.
+   *
+   * @param tag The Rest POST message received
+   * @return completes with <code>true</code>, once the tag has been successfully configured
+   */
+  public CompletableFuture<Boolean> requestTag(RestTagUpdate tag) {
+    return requestTags(Collections.singletonList(tag));
+  }
+
+  /**
+   * Requests the creation of several tags in C2MON
+   *
+   * @param tags The Rest POST messages of the tags to create
+   * @return completes with <code>true</code>, once all tags have been successfully configured
+   * @see #requestTag(RestTagUpdate)
+   */
+  public CompletableFuture<Boolean> requestTags(Collection<RestTagUpdate> tags) {
+    List<CompletableFuture<Boolean>> results = new ArrayList<>(tags.size());
+    boolean newBatch = false;
+
+    synchronized (lock) {
+      if (batchExecutor != null && batchExecutor.isShutdown()) {
+        log.debug("Rejecting creation of {} tags, since the tag configurer has been shut down", tags.size());
+        return CompletableFuture.completedFuture(false);
+      }
+
+      for (RestTagUpdate tag : tags) {
+        if (tag.getName() == null || tag.getName().isEmpty()) {
+          results.add(CompletableFuture.completedFuture(false));
+          continue;
+        }
+
+        CompletableFuture<Boolean> result = pendingCreations.get(tag.getName());
+        if (result == null) {
+          result = new CompletableFuture<>();
+          pendingCreations.put(tag.getName(), result);
+          batch.add(tag);
+          newBatch |= batch.size() == 1;
+        }
+        results.add(result);
+      }
+
+      if (newBatch) {
+        getBatchExecutor().schedule(this::flush, batchWindow, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+        .thenApply(v -> results.stream().allMatch(CompletableFuture::join));
+  }
+
+  /**
+   * Creates the collected tags with one configuration request and releases the
+   * waiting updates. If the bulk request fails, the tags are created again one
+   * by one, so that a single rejected configuration does not fail the
+   * unrelated tags of the same batch.
+   */
+  private void flush() {
+    List<RestTagUpdate> tags;
+    synchronized (lock) {
+      tags = batch;
+      batch = new ArrayList<>();
+    }
+
+    boolean success;
+    try {
+      success = createTags(tags);
+    } catch (RuntimeException e) {
+      log.warn("Problem occurred while creating {} new tags: {}", tags.size(), e.getMessage());
+      success = false;
+    }
+
+    if (success || tags.size() == 1) {
+      for (RestTagUpdate tag : tags) {
+        complete(tag, success);
+      }
+      return;
+    }
+
+    log.info("Creating {} new tags one by one, since the bulk configuration failed", tags.size());
+    for (RestTagUpdate tag : tags) {
+      boolean tagSuccess;
+      try {
+        tagSuccess = createTag(tag);
+      } catch (RuntimeException e) {
+        log.warn("Problem occurred while creating new tag {}: {}", tag.getName(), e.getMessage());
+        tagSuccess = false;
+      }
+      complete(tag, tagSuccess);
+    }
+  }
+
+  /**
+   * Releases the updates waiting for the creation of the given tag
+   */
+  private void complete(RestTagUpdate tag, boolean success) {
+    CompletableFuture<Boolean> result;
+    synchronized (lock) {
+      result = pendingCreations.remove(tag.getName());
+    }
+    // the result has already been completed, if the pipeline has been shut down
+    if (result != null) {
+      result.complete(success);
+    }
+  }
+
+  private ScheduledExecutorService getBatchExecutor() {
+    if (batchExecutor == null) {
+      batchExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TagConfigurer");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return batchExecutor;
+  }
+
+  /**
+   * Stops the pipeline. Tags, which have been requested but not yet created, are rejected.
+   */
+  public void shutdown() {
+    List<CompletableFuture<Boolean>> results;
+    synchronized (lock) {
+      if (batchExecutor != null) {
+        batchExecutor.shutdownNow();
+      }
+      results = new ArrayList<>(pendingCreations.values());
+      pendingCreations.clear();
+      batch.clear();
+    }
+    results.forEach(result -> result.complete(false));
+  }
+
   protected DataTag createConfiguration(RestTagUpdate tag) {
     DataTag dataTag = DataTag.create(tag.getName(), getType(tag), getAddress(tag.getPostFrequency())).build();
     dataTag.setDescription(tag.getDescription());
@@ -0,0 +1,64 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.config;
+
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lets the embedded Tomcat handle every request on its own virtual thread
+ * instead of its bounded worker pool, if <code>c2mon.daq.rest.virtualThreads</code>
+ * is enabled and the Java runtime supports virtual threads.
+ */
+@Slf4j
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnClass(TomcatServletWebServerFactory.class)
+@ConditionalOnProperty(prefix = "c2mon.daq.rest", name = "virtual-threads", havingValue = "true")
+public class VirtualThreadTomcatCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory>, DisposableBean {
+
+  private ExecutorService executor;
+
+  @Override
+  public void customize(TomcatServletWebServerFactory factory) {
+    if (!VirtualThreads.isSupported()) {
+      log.warn("c2mon.daq.rest.virtualThreads is enabled, but Java {} does not support virtual threads. Requests are handled by the Tomcat worker pool.",
+          System.getProperty("java.version"));
+      return;
+    }
+
+    executor = VirtualThreads.newVirtualThreadPerTaskExecutor("http-virtual-");
+    factory.addConnectorCustomizers(connector -> connector.getProtocolHandler().setExecutor(executor));
+    log.info("HTTP requests are handled on virtual threads");
+  }
+
+  @Override
+  public void destroy() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+}
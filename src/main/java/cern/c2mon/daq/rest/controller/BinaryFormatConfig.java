@@ -0,0 +1,58 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Registers the message converters for the compact binary payloads. The
+ * update endpoints accept <code>application/cbor</code> and
+ * <code>application/msgpack</code> in addition to JSON.
+ * <p/>
+ * The converters are added after the default converters, so that responses
+ * are only encoded in a binary format if it is explicitly requested with the
+ * <code>Accept</code> header. Clients without <code>Accept</code> header, or
+ * with <code>*&#47;*</code>, still receive JSON.
+ */
+@Configuration
+public class BinaryFormatConfig implements WebMvcConfigurer {
+
+  public static final String APPLICATION_CBOR_VALUE = "application/cbor";
+
+  private final List<AbstractJackson2HttpMessageConverter> converters = Collections.unmodifiableList(Arrays.asList(
+      new MappingJackson2CborHttpMessageConverter(), new MessagePackHttpMessageConverter()));
+
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    converters.addAll(this.converters);
+  }
+
+  /**
+   * @return The converters of the binary formats
+   */
+  public List<AbstractJackson2HttpMessageConverter> getConverters() {
+    return converters;
+  }
+}
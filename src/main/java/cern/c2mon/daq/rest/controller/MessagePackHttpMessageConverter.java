@@ -0,0 +1,48 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads and writes MessagePack with Jackson, analogous to the CBOR and
+ * Smile converters of Spring.
+ */
+public class MessagePackHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+  public static final String APPLICATION_MSGPACK_VALUE = "application/msgpack";
+
+  public static final MediaType APPLICATION_MSGPACK = MediaType.valueOf(APPLICATION_MSGPACK_VALUE);
+
+  /** Media type used by older MessagePack clients */
+  public static final String APPLICATION_X_MSGPACK_VALUE = "application/x-msgpack";
+
+  public static final MediaType APPLICATION_X_MSGPACK = MediaType.valueOf(APPLICATION_X_MSGPACK_VALUE);
+
+  public MessagePackHttpMessageConverter() {
+    this(Jackson2ObjectMapperBuilder.json().factory(new MessagePackFactory()).build());
+  }
+
+  public MessagePackHttpMessageConverter(ObjectMapper objectMapper) {
+    super(objectMapper, APPLICATION_MSGPACK, APPLICATION_X_MSGPACK);
+  }
+}
@@ -0,0 +1,65 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Reactive server mode, which is enabled with
+ * <code>spring.main.web-application-type=reactive</code>. The endpoints of the
+ * {@link RestController} are then served by Netty on an event loop, instead
+ * of a Tomcat worker thread per request.
+ * <p/>
+ * The router functions take precedence over the annotated mappings of the
+ * {@link RestController}, which keeps the state and the processing logic for
+ * both modes.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfig {
+
+  /**
+   * Netty is used, although Tomcat is on the classpath for the default servlet mode
+   */
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+
+  @Bean
+  public ReactiveUpdateHandler reactiveUpdateHandler(RestController restController, ObjectMapper objectMapper) {
+    return new ReactiveUpdateHandler(restController, objectMapper);
+  }
+
+  @Bean
+  public RouterFunction<ServerResponse> restRoutes(ReactiveUpdateHandler handler) {
+    return route(POST("/tags/{identifier}"), handler::postValue)
+        .andRoute(POST("/update"), handler::postUpdate)
+        .andRoute(POST("/updates"), handler::postUpdates)
+        .andRoute(POST("/updates/stream"), handler::postStream);
+  }
+}
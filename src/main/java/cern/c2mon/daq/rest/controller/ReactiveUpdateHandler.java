@@ -0,0 +1,126 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import cern.c2mon.daq.rest.RestTagUpdate;
+
+/**
+ * Serves the endpoints of the {@link RestController} on the event loop of the
+ * reactive server. The updates are processed by the {@link RestController}
+ * without blocking: the sending to the DAQ core only enqueues the value, and
+ * the auto-configuration of unknown tags is awaited asynchronously.
+ */
+public class ReactiveUpdateHandler {
+
+  private static final ParameterizedTypeReference<List<RestTagUpdate>> UPDATE_LIST = new ParameterizedTypeReference<List<RestTagUpdate>>() {};
+
+  private final RestController restController;
+
+  private final ObjectReader updateReader;
+
+  public ReactiveUpdateHandler(RestController restController, ObjectMapper objectMapper) {
+    this.restController = restController;
+    this.updateReader = objectMapper.readerFor(RestTagUpdate.class);
+  }
+
+  /**
+   * @see RestController#postHandler(String, String)
+   */
+  public Mono<ServerResponse> postValue(ServerRequest request) {
+    String identifier = request.pathVariable("identifier");
+    return request.bodyToMono(String.class)
+        .flatMap(value -> ok(restController.postValue(identifier, value)))
+        .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest().build()));
+  }
+
+  /**
+   * @see RestController#postHandlerJson(RestTagUpdate)
+   */
+  public Mono<ServerResponse> postUpdate(ServerRequest request) {
+    return request.bodyToMono(RestTagUpdate.class)
+        .flatMap(update -> Mono.fromFuture(restController.processUpdateAsync(update)))
+        .map(status -> restController.count("/update", status))
+        .flatMap(status -> respond(RestController.responseStatus(status), status))
+        .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest().build()));
+  }
+
+  /**
+   * @see RestController#postHandlerJsonBatch(List)
+   */
+  public Mono<ServerResponse> postUpdates(ServerRequest request) {
+    return request.bodyToMono(UPDATE_LIST)
+        .flatMap(updates -> Mono.fromFuture(restController.processUpdatesAsync(updates)))
+        .flatMap(statuses -> respond(RestController.responseStatus(statuses), statuses))
+        .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest().build()));
+  }
+
+  /**
+   * Processes a stream of newline-delimited JSON messages. The lines are
+   * processed one after the other as soon as they are received.
+   *
+   * @see RestController#postHandlerStream(java.io.InputStream)
+   */
+  public Mono<ServerResponse> postStream(ServerRequest request) {
+    UpdateStreamReport report = new UpdateStreamReport();
+    return request.bodyToFlux(String.class)
+        .index()
+        .concatMap(line -> processLine(report, line.getT1() + 1, line.getT2()))
+        .then(Mono.fromCallable(() -> RestController.logReport(report)))
+        .flatMap(this::ok);
+  }
+
+  private Mono<Void> processLine(UpdateStreamReport report, long lineNumber, String line) {
+    if (line.trim().isEmpty()) {
+      return Mono.empty();
+    }
+    report.setReceived(report.getReceived() + 1);
+
+    RestTagUpdate update;
+    try {
+      update = updateReader.readValue(line);
+    } catch (IOException e) {
+      String message = e instanceof JsonProcessingException ? ((JsonProcessingException) e).getOriginalMessage() : e.getMessage();
+      report.addError(lineNumber, restController.count("/updates/stream", HttpStatus.BAD_REQUEST), "Invalid JSON message: " + message);
+      return Mono.empty();
+    }
+
+    return Mono.fromFuture(restController.processUpdateAsync(update))
+        .doOnNext(status -> restController.addToReport(report, lineNumber, status))
+        .then();
+  }
+
+  private Mono<ServerResponse> ok(Object body) {
+    return respond(HttpStatus.OK, body);
+  }
+
+  private Mono<ServerResponse> respond(HttpStatus status, Object body) {
+    return ServerResponse.status(status).bodyValue(body);
+  }
+}
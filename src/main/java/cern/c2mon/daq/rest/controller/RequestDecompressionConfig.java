@@ -0,0 +1,41 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+
+/**
+ * Registers the decompression of compressed request bodies for the
+ * ingestion endpoints of the {@link RestController}.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RequestDecompressionConfig {
+
+  @Bean
+  public FilterRegistrationBean<RequestDecompressionFilter> requestDecompressionFilter(RestDaqProperties properties) {
+    FilterRegistrationBean<RequestDecompressionFilter> registration =
+        new FilterRegistrationBean<>(new RequestDecompressionFilter(properties.getDecompression()));
+    registration.addUrlPatterns("/tags/*", "/update", "/updates", "/updates/stream");
+    return registration;
+  }
+}
@@ -0,0 +1,305 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+
+/**
+ * Decompresses POST bodies with <code>Content-Encoding: gzip</code> or
+ * <code>deflate</code>. The body is decompressed while it is read by the
+ * controller, so that it is never inflated into memory as a whole.
+ * <p/>
+ * The decompressed size is limited by the configured maximum size and
+ * compression ratio. If a limit is exceeded, a
+ * {@link DecompressedSizeExceededException} is thrown to the reader, which is
+ * answered with 413 (Payload Too Large). Other encodings are rejected with
+ * 415 (Unsupported Media Type).
+ */
+@Slf4j
+public class RequestDecompressionFilter extends OncePerRequestFilter {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /** The compression ratio is only checked above this decompressed size, since small bodies are harmless */
+  private static final long RATIO_CHECK_THRESHOLD = 1_048_576;
+
+  private final RestDaqProperties.Decompression properties;
+
+  public RequestDecompressionFilter(RestDaqProperties.Decompression properties) {
+    this.properties = properties;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+    if (encoding == null || encoding.trim().isEmpty() || "identity".equalsIgnoreCase(encoding.trim())) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+
+    encoding = encoding.trim().toLowerCase(Locale.ROOT);
+    if (!properties.isEnabled() || !isSupported(encoding)) {
+      log.warn("Rejected request to {} with unsupported Content-Encoding: {}", request.getRequestURI(), encoding);
+      response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported Content-Encoding: " + encoding);
+      return;
+    }
+
+    filterChain.doFilter(new DecompressingRequest(request, encoding), response);
+  }
+
+  private static boolean isSupported(String encoding) {
+    return "gzip".equals(encoding) || "x-gzip".equals(encoding) || "deflate".equals(encoding);
+  }
+
+  /**
+   * Creates the decoder for the given encoding. A deflate body is either
+   * zlib-wrapped as specified by HTTP, or raw deflate as sent by some
+   * clients. The format is detected with the zlib header.
+   */
+  private static InputStream decoder(InputStream compressed, String encoding) throws IOException {
+    if (!"deflate".equals(encoding)) {
+      return new GZIPInputStream(compressed, BUFFER_SIZE);
+    }
+
+    BufferedInputStream buffered = new BufferedInputStream(compressed, BUFFER_SIZE);
+    buffered.mark(2);
+    int cmf = buffered.read();
+    int flg = buffered.read();
+    buffered.reset();
+    boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    return new InflaterInputStream(buffered, new Inflater(!zlib), BUFFER_SIZE);
+  }
+
+  /**
+   * Request with the decompressed body, which hides the content encoding and length of the compressed body
+   */
+  private class DecompressingRequest extends HttpServletRequestWrapper {
+
+    private final String encoding;
+
+    private ServletInputStream inputStream;
+
+    private BufferedReader reader;
+
+    DecompressingRequest(HttpServletRequest request, String encoding) {
+      super(request);
+      this.encoding = encoding;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+      if (reader != null) {
+        throw new IllegalStateException("getReader() has already been called for this request");
+      }
+      if (inputStream == null) {
+        inputStream = new DecompressingInputStream(super.getInputStream(), encoding);
+      }
+      return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+      if (reader == null) {
+        if (inputStream != null) {
+          throw new IllegalStateException("getInputStream() has already been called for this request");
+        }
+        Charset charset = getCharacterEncoding() != null ? Charset.forName(getCharacterEncoding()) : StandardCharsets.UTF_8;
+        reader = new BufferedReader(new InputStreamReader(new DecompressingInputStream(super.getInputStream(), encoding), charset));
+      }
+      return reader;
+    }
+
+    @Override
+    public int getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+      return -1;
+    }
+
+    @Override
+    public String getHeader(String name) {
+      return isHidden(name) ? null : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+      return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+      return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+          .filter(name -> !isHidden(name))
+          .collect(Collectors.toList()));
+    }
+
+    private boolean isHidden(String name) {
+      return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+    }
+  }
+
+  /**
+   * Decompresses the body while it is read and enforces the limits
+   */
+  private class DecompressingInputStream extends ServletInputStream {
+
+    private final CountingInputStream compressed;
+
+    private final InputStream decompressed;
+
+    private long size;
+
+    private boolean finished;
+
+    DecompressingInputStream(ServletInputStream body, String encoding) throws IOException {
+      this.compressed = new CountingInputStream(body);
+      this.decompressed = decoder(compressed, encoding);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = decompressed.read();
+      if (b < 0) {
+        finished = true;
+      } else {
+        checkLimits(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int n = decompressed.read(buffer, offset, length);
+      if (n < 0) {
+        finished = true;
+      } else {
+        checkLimits(n);
+      }
+      return n;
+    }
+
+    private void checkLimits(int n) throws DecompressedSizeExceededException {
+      size += n;
+      if (size > properties.getMaxSize()) {
+        throw new DecompressedSizeExceededException("Decompressed request body exceeds the limit of " + properties.getMaxSize() + " bytes");
+      }
+      if (size > RATIO_CHECK_THRESHOLD && size > compressed.count * properties.getMaxRatio()) {
+        throw new DecompressedSizeExceededException("Compression ratio of request body exceeds the limit of " + properties.getMaxRatio());
+      }
+    }
+
+    @Override
+    public int available() throws IOException {
+      return decompressed.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+      decompressed.close();
+    }
+
+    @Override
+    public boolean isFinished() {
+      return finished;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+      throw new UnsupportedOperationException("Non-blocking reading of compressed request bodies is not supported");
+    }
+  }
+
+  /**
+   * Counts the compressed bytes, which have been read
+   */
+  private static class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int n = super.read(buffer, offset, length);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
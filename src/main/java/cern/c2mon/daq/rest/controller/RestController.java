@@ -16,19 +16,53 @@ a * Copyright (C) 2010-2020 CERN. All rights not expressly granted are reserved.
  *****************************************************************************/
 package cern.c2mon.daq.rest.controller;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import javax.servlet.http.HttpServletRequest;
+
 import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.HttpMediaTypeNotSupportedException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import cern.c2mon.daq.rest.RestTagUpdate;
 import cern.c2mon.daq.rest.config.TagConfigurer;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics;
 import cern.c2mon.daq.rest.scheduling.PostScheduler;
 import cern.c2mon.shared.common.datatag.ValueUpdate;
 
@@ -46,6 +80,20 @@ public class RestController {
 
   private TagConfigurer tagConfigurer;
 
+  /**
+   * Messages of unknown tags are buffered until the tag has been auto-configured, instead of waiting for it
+   */
+  private boolean asyncAutoConfiguration;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired(required = false)
+  private RestDaqMetrics metrics = RestDaqMetrics.NOOP;
+
+  @Autowired(required = false)
+  private BinaryFormatConfig binaryFormats;
+
   /**
    * This method receives HTTP POST requests. In order to ensure that the
    * message decoding is done right the user of the post query needs to specify
@@ -67,6 +115,36 @@ public class RestController {
   @PostMapping(value = "/tags/{identifier}")
   @ResponseBody
   public HttpStatus postHandler(@PathVariable("identifier") String identifier, @RequestBody String value) {
+    return postValue(identifier, value);
+  }
+
+  /**
+   * Receives the value of a tag encoded as CBOR or MessagePack. In contrast
+   * to {@link #postHandler(String, String)} the value is decoded with its
+   * type, e.g. as number or boolean.
+   *
+   * @param identifier The identifier of the tag. This can either be the name
+   *                   of the tag or the id.
+   * @param value      The decoded value of the body
+   * @return The status of the request. If the request was successful to the
+   * server the request will be HttpStatus.OK.
+   */
+  @PostMapping(value = "/tags/{identifier}", consumes = {BinaryFormatConfig.APPLICATION_CBOR_VALUE,
+      MessagePackHttpMessageConverter.APPLICATION_MSGPACK_VALUE, MessagePackHttpMessageConverter.APPLICATION_X_MSGPACK_VALUE})
+  @ResponseBody
+  public HttpStatus postHandlerBinary(@PathVariable("identifier") String identifier, @RequestBody Object value) {
+    return postValue(identifier, value);
+  }
+
+  /**
+   * Sends the value of a tag, which is identified by its name or id
+   *
+   * @param identifier The identifier of the tag. This can either be the name
+   *                   of the tag or the id.
+   * @param value      The received value
+   * @return The status of the update
+   */
+  HttpStatus postValue(String identifier, Object value) {
     Long tagId;
 
     try {
@@ -74,10 +152,10 @@ public class RestController {
       tagId = StringUtils.isNumeric(identifier) ? Long.parseLong(identifier) : postScheduler.getIdByName(identifier);
     } catch (Exception e) {
       log.warn("Unexpected Problem: Received a message with the identifier:" + identifier + ":", e);
-      return HttpStatus.BAD_REQUEST;
+      return count("/tags", HttpStatus.BAD_REQUEST);
     }
 
-    return postScheduler.sendValueToServer(tagId, new ValueUpdate(value));
+    return count("/tags", postScheduler.sendValueToServer(tagId, new ValueUpdate(value)));
   }
 
 
@@ -85,24 +163,320 @@ public class RestController {
    * Receives the JSON HTTP POST messages and checks if the tag exists before sending the update
    * @param update The JSON message that we received
    * @return The status of the request. If the request was successful to the server the request will be HttpStatus.OK.
+   * @see #responseStatus(HttpStatus)
    */
   @PostMapping(value = "/update")
+  public ResponseEntity<HttpStatus> postHandlerJson(@RequestBody RestTagUpdate update) {
+    HttpStatus status = count("/update", processUpdate(update));
+    return ResponseEntity.status(responseStatus(status)).body(status);
+  }
+
+  /**
+   * Receives a stream of newline-delimited JSON messages (NDJSON). Every line
+   * is parsed and processed as soon as it is received, so that a producer can
+   * push updates continuously over a single connection without the body being
+   * buffered in memory.
+   *
+   * @param body The request body
+   * @return Summary of the stream with the errors per line, once the stream has been closed by the client
+   * @throws IOException In case of a problem while reading the stream
+   */
+  @PostMapping(value = "/updates/stream")
   @ResponseBody
-  public HttpStatus postHandlerJson(@RequestBody RestTagUpdate update) {
-    boolean tagExist = postScheduler.tagExist(update.getName());
-    if (!tagExist && isAutoConfigurationEnabled()) {
-      tagExist = tagConfigurer.createTag(update);
+  public UpdateStreamReport postHandlerStream(InputStream body) throws IOException {
+    UpdateStreamReport report = new UpdateStreamReport();
+    ObjectReader updateReader = objectMapper.readerFor(RestTagUpdate.class);
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+      long lineNumber = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        report.setReceived(report.getReceived() + 1);
+
+        HttpStatus status;
+        try {
+          status = processUpdate(updateReader.readValue(line));
+        } catch (JsonProcessingException e) {
+          report.addError(lineNumber, count("/updates/stream", HttpStatus.BAD_REQUEST), "Invalid JSON message: " + e.getOriginalMessage());
+          continue;
+        }
+        addToReport(report, lineNumber, status);
+      }
+    }
+
+    return logReport(report);
+  }
+
+  /**
+   * Receives a stream of concatenated CBOR or MessagePack messages. The
+   * messages are decoded and processed one after the other, like the lines
+   * of {@link #postHandlerStream(InputStream)}. Since a binary stream cannot
+   * be resynchronized, the processing stops at the first invalid message.
+   *
+   * @param body        The request body
+   * @param contentType The content type of the request body
+   * @return Summary of the stream with the errors per message, once the stream has been closed by the client
+   * @throws IOException In case of a problem while reading the stream
+   * @throws HttpMediaTypeNotSupportedException If no message converter is registered for the content type
+   */
+  @PostMapping(value = "/updates/stream", consumes = {BinaryFormatConfig.APPLICATION_CBOR_VALUE,
+      MessagePackHttpMessageConverter.APPLICATION_MSGPACK_VALUE, MessagePackHttpMessageConverter.APPLICATION_X_MSGPACK_VALUE})
+  @ResponseBody
+  public UpdateStreamReport postHandlerBinaryStream(InputStream body, @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType)
+      throws IOException, HttpMediaTypeNotSupportedException {
+    UpdateStreamReport report = new UpdateStreamReport();
+    ObjectReader updateReader = getObjectMapper(MediaType.parseMediaType(contentType)).readerFor(RestTagUpdate.class);
+
+    long messageNumber = 0;
+    try (MappingIterator<RestTagUpdate> updates = updateReader.readValues(body)) {
+      while (updates.hasNextValue()) {
+        messageNumber++;
+        report.setReceived(report.getReceived() + 1);
+        addToReport(report, messageNumber, processUpdate(updates.nextValue()));
+      }
+    } catch (JsonProcessingException e) {
+      report.addError(messageNumber, count("/updates/stream", HttpStatus.BAD_REQUEST), "Invalid message: " + e.getOriginalMessage());
+    }
+
+    return logReport(report);
+  }
+
+  void addToReport(UpdateStreamReport report, long lineNumber, HttpStatus status) {
+    count("/updates/stream", status);
+
+    if (status == HttpStatus.OK || status == HttpStatus.ACCEPTED) {
+      report.setAccepted(report.getAccepted() + 1);
+    } else {
+      report.addError(lineNumber, status, "Update could not be processed");
+    }
+  }
+
+  static UpdateStreamReport logReport(UpdateStreamReport report) {
+    if (report.getRejected() > 0) {
+      log.warn("Rejected {} of {} updates received through stream", report.getRejected(), report.getReceived());
     }
+    return report;
+  }
+
+  /**
+   * @return The object mapper of the message converter for the given binary content type
+   */
+  private ObjectMapper getObjectMapper(MediaType contentType) throws HttpMediaTypeNotSupportedException {
+    List<AbstractJackson2HttpMessageConverter> converters = binaryFormats != null ? binaryFormats.getConverters() : Collections.emptyList();
+    return converters.stream()
+        .filter(converter -> converter.canRead(RestTagUpdate.class, contentType))
+        .map(AbstractJackson2HttpMessageConverter::getObjectMapper)
+        .findFirst()
+        .orElseThrow(() -> new HttpMediaTypeNotSupportedException("Content type '" + contentType + "' not supported"));
+  }
+
+  /**
+   * Checks if the tag exists, or creates it if auto-configuration is enabled, before sending the update
+   * @param update The JSON message that we received
+   * @return The status of the update
+   */
+  HttpStatus processUpdate(RestTagUpdate update) {
+    return processUpdateAsync(update).join();
+  }
 
-    if (!tagExist) {
-      log.warn("Could not create new tag for name {}. Auto-configuration setting: c2mon.daq.rest.autoConfiguration={}", update.getName(), isAutoConfigurationEnabled());
+  /**
+   * Like {@link #processUpdate(RestTagUpdate)}, but without waiting for the
+   * auto-configuration of an unknown tag. The update is sent once the tag has
+   * been created.
+   *
+   * @param update The JSON message that we received
+   * @return The status of the update
+   */
+  CompletableFuture<HttpStatus> processUpdateAsync(RestTagUpdate update) {
+    Long tagId = postScheduler.findIdByName(update.getName());
+    if (tagId != null) {
+      return CompletableFuture.completedFuture(postScheduler.sendValueToServer(tagId, toValueUpdate(update)));
+    }
+    if (isAutoConfigurationEnabled() && asyncAutoConfiguration) {
+      return CompletableFuture.completedFuture(bufferUntilConfigured(update));
+    }
+
+    CompletableFuture<Boolean> configured = isAutoConfigurationEnabled()
+        ? tagConfigurer.requestTag(update) : CompletableFuture.completedFuture(false);
+    return configured.thenApply(success -> {
+      Long createdTagId = success ? postScheduler.findIdByName(update.getName()) : null;
+      if (createdTagId == null) {
+        log.warn("Could not create new tag for name {}. Auto-configuration setting: c2mon.daq.rest.autoConfiguration={}", update.getName(), isAutoConfigurationEnabled());
+        return HttpStatus.BAD_REQUEST;
+      }
+      return postScheduler.sendValueToServer(createdTagId, toValueUpdate(update));
+    });
+  }
+
+  /**
+   * Buffers the update of an unknown tag and requests its auto-configuration.
+   * The buffered value is sent, once the tag has been added to the equipment.
+   *
+   * @param update The JSON message that we received
+   * @return HttpStatus.ACCEPTED, if the value has been buffered
+   */
+  private HttpStatus bufferUntilConfigured(RestTagUpdate update) {
+    String name = update.getName();
+    if (name == null || name.isEmpty()) {
       return HttpStatus.BAD_REQUEST;
     }
 
-    ValueUpdate valueUpdate = new ValueUpdate(update.getValue(), update.getValueDescription(), update.getTimestamp());
-    return postScheduler.sendValueToServer(update.getName(), valueUpdate);
+    if (!postScheduler.bufferPendingUpdate(name, toValueUpdate(update))) {
+      log.warn("Rejected message for tag {}, since the buffer of tags in auto-configuration is full", name);
+      return HttpStatus.TOO_MANY_REQUESTS;
+    }
+
+    tagConfigurer.requestTag(update).thenAccept(success -> {
+      if (!success) {
+        postScheduler.discardPendingUpdates(name);
+      }
+    });
+    return HttpStatus.ACCEPTED;
+  }
+
+  /**
+   * Receives a JSON array of HTTP POST messages. The tag names are resolved in
+   * bulk and all unknown tags are created with a single auto-configuration
+   * request, before the updates are sent.
+   *
+   * @param updates The JSON messages that we received
+   * @return The status of every message, in the same order as received
+   * @see #responseStatus(List)
+   */
+  @PostMapping(value = "/updates")
+  public ResponseEntity<List<HttpStatus>> postHandlerJsonBatch(@RequestBody List<RestTagUpdate> updates) {
+    List<HttpStatus> statuses = processUpdatesAsync(updates).join();
+    return ResponseEntity.status(responseStatus(statuses)).body(statuses);
+  }
+
+  /**
+   * Processes a batch of updates like {@link #postHandlerJsonBatch(List)}, but
+   * without waiting for the auto-configuration of the unknown tags.
+   *
+   * @param updates The JSON messages that we received
+   * @return The status of every message, in the same order as received
+   */
+  CompletableFuture<List<HttpStatus>> processUpdatesAsync(List<RestTagUpdate> updates) {
+    Set<String> names = updates.stream()
+        .map(RestTagUpdate::getName)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+    Map<String, Long> tagIds = postScheduler.getIdsByName(names);
+
+    if (tagIds.size() < names.size() && isAutoConfigurationEnabled() && asyncAutoConfiguration) {
+      List<HttpStatus> result = new ArrayList<>(updates.size());
+      for (RestTagUpdate update : updates) {
+        Long tagId = update.getName() != null ? tagIds.get(update.getName()) : null;
+        result.add(count("/updates", tagId != null ? postScheduler.sendValueToServer(tagId, toValueUpdate(update)) : bufferUntilConfigured(update)));
+      }
+      return CompletableFuture.completedFuture(result);
+    }
+
+    // The first update of an unknown tag defines its configuration
+    Map<String, RestTagUpdate> unknownTags = new LinkedHashMap<>();
+    CompletableFuture<Boolean> configured = CompletableFuture.completedFuture(false);
+    if (tagIds.size() < names.size() && isAutoConfigurationEnabled()) {
+      for (RestTagUpdate update : updates) {
+        if (update.getName() != null && !tagIds.containsKey(update.getName())) {
+          unknownTags.putIfAbsent(update.getName(), update);
+        }
+      }
+      configured = tagConfigurer.requestTags(unknownTags.values());
+    }
+
+    return configured.thenApply(success -> {
+      if (success) {
+        tagIds.putAll(postScheduler.getIdsByName(unknownTags.keySet()));
+      }
+
+      if (tagIds.size() < names.size()) {
+        log.warn("Could not find or create {} of {} tags. Auto-configuration setting: c2mon.daq.rest.autoConfiguration={}",
+            names.size() - tagIds.size(), names.size(), isAutoConfigurationEnabled());
+      }
+
+      List<HttpStatus> result = new ArrayList<>(updates.size());
+      for (RestTagUpdate update : updates) {
+        Long tagId = update.getName() != null ? tagIds.get(update.getName()) : null;
+        result.add(count("/updates", tagId != null ? postScheduler.sendValueToServer(tagId, toValueUpdate(update)) : HttpStatus.BAD_REQUEST));
+      }
+      return result;
+    });
+  }
+
+  /**
+   * Sends the value of a tag, which is identified by its id
+   *
+   * @param tagId       The tag id
+   * @param valueUpdate The received value
+   * @return The status of the update
+   */
+  HttpStatus processValue(Long tagId, ValueUpdate valueUpdate) {
+    return postScheduler.sendValueToServer(tagId, valueUpdate);
+  }
+
+  /**
+   * Answers requests, whose compressed body exceeds the limits of the decompression, with 413 (Payload Too Large).
+   * The exception is either thrown directly while reading a stream, or as cause of a failed message conversion.
+   */
+  @ExceptionHandler(DecompressedSizeExceededException.class)
+  @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+  @ResponseBody
+  public HttpStatus handleDecompressedSizeExceeded(DecompressedSizeExceededException e, HttpServletRequest request) {
+    log.warn("Rejected request to {}: {}", request.getRequestURI(), e.getMessage());
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    String endpoint = pattern != null ? StringUtils.substringBefore(pattern.toString(), "/{") : request.getRequestURI();
+    return count(endpoint, HttpStatus.PAYLOAD_TOO_LARGE);
+  }
+
+  /**
+   * Returns the HTTP status of the response to an update. The status of the
+   * update itself is always returned in the body. An update, which has only
+   * been buffered until its tag is configured, is furthermore answered with
+   * 202 (Accepted), and an update, which has been rejected because the buffer
+   * is full, with 429 (Too Many Requests). All other outcomes are answered
+   * with 200, as before.
+   *
+   * @param status The status of the update
+   * @return The HTTP status of the response
+   */
+  static HttpStatus responseStatus(HttpStatus status) {
+    return status == HttpStatus.ACCEPTED || status == HttpStatus.TOO_MANY_REQUESTS ? status : HttpStatus.OK;
+  }
+
+  /**
+   * Returns the HTTP status of the response to a batch of updates. If any
+   * update has been rejected because the buffer is full, the response is 429
+   * (Too Many Requests), so that the client backs off. Otherwise the response
+   * is 202 (Accepted), if any update has only been buffered.
+   *
+   * @param statuses The status of every update
+   * @return The HTTP status of the response
+   * @see #responseStatus(HttpStatus)
+   */
+  static HttpStatus responseStatus(List<HttpStatus> statuses) {
+    if (statuses.contains(HttpStatus.TOO_MANY_REQUESTS)) {
+      return HttpStatus.TOO_MANY_REQUESTS;
+    }
+    return statuses.contains(HttpStatus.ACCEPTED) ? HttpStatus.ACCEPTED : HttpStatus.OK;
   }
-  
+
+  private static ValueUpdate toValueUpdate(RestTagUpdate update) {
+    return new ValueUpdate(update.getValue(), update.getValueDescription(), update.getTimestamp());
+  }
+
+  /**
+   * Counts a processed message. The status is returned in the body, hence it
+   * is not part of the HTTP server metrics of Spring Boot.
+   */
+  HttpStatus count(String endpoint, HttpStatus status) {
+    metrics.postRequest(endpoint, status);
+    return status;
+  }
+
   private boolean isAutoConfigurationEnabled() {
     return tagConfigurer != null;
   }
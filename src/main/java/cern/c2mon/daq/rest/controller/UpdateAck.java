@@ -0,0 +1,71 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Acknowledgement of the messages, which have been received through the
+ * WebSocket channel since the previous acknowledgement. The messages of a
+ * session are numbered consecutively, starting with 1. Only the first
+ * {@link #MAX_REPORTED_REJECTIONS} rejections are reported in detail.
+ */
+@Data
+public class UpdateAck {
+
+  public static final int MAX_REPORTED_REJECTIONS = 100;
+
+  /** Sequence number of the last acknowledged message */
+  private long lastSequence;
+
+  /** Number of acknowledged messages, which were successfully processed */
+  private int accepted;
+
+  /** Number of acknowledged messages, which could not be processed */
+  private int rejected;
+
+  /** The rejected messages */
+  private List<Rejection> rejections = new ArrayList<>();
+
+  void addRejection(long sequence, HttpStatus status, String message) {
+    rejected++;
+    if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+      rejections.add(new Rejection(sequence, status, message));
+    }
+  }
+
+  int size() {
+    return accepted + rejected;
+  }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Rejection {
+    /** Sequence number of the message within the session */
+    private long sequence;
+    private HttpStatus status;
+    private String message;
+  }
+}
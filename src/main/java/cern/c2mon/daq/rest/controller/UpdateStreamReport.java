@@ -0,0 +1,67 @@
+/******************************************************************************
+ * Copyright (C) 2010-2020 CERN. All rights not expressly granted are reserved.
+ * <p/>
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ * <p/>
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ * <p/>
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Summary of a streamed ingestion, which is returned once the stream has
+ * been fully consumed. Only the first {@link #MAX_REPORTED_ERRORS} errors are
+ * reported in detail, so that the memory usage stays constant for a
+ * long-lived stream.
+ */
+@Data
+public class UpdateStreamReport {
+
+  public static final int MAX_REPORTED_ERRORS = 1_000;
+
+  /** Number of non-empty lines received */
+  private long received;
+
+  /** Number of updates which were successfully sent to the server */
+  private long accepted;
+
+  /** Number of lines which could not be processed */
+  private long rejected;
+
+  /** The errors of the rejected lines */
+  private List<LineError> errors = new ArrayList<>();
+
+  void addError(long line, HttpStatus status, String message) {
+    rejected++;
+    if (errors.size() < MAX_REPORTED_ERRORS) {
+      errors.add(new LineError(line, status, message));
+    }
+  }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class LineError {
+    /** Line number within the stream, starting with 1 */
+    private long line;
+    private HttpStatus status;
+    private String message;
+  }
+}
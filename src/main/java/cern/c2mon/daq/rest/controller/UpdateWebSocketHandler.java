@@ -0,0 +1,238 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.daq.rest.RestTagUpdate;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+
+/**
+ * Receives tag updates over a persistent WebSocket connection. Every text
+ * message may contain one or more newline-separated updates, which are
+ * either a {@link RestTagUpdate} JSON object or a compact JSON array of the
+ * form <code>[id, value]</code> or <code>[id, value, timestamp]</code>.
+ * <p/>
+ * The updates are numbered per session and acknowledged asynchronously with
+ * an {@link UpdateAck}, which is sent once the configured number of updates
+ * has been processed or the configured interval has elapsed.
+ */
+@Slf4j
+public class UpdateWebSocketHandler extends TextWebSocketHandler implements DisposableBean {
+
+  static final String ENDPOINT = "/ws/updates";
+
+  /** Maximum time in milliseconds for sending an acknowledgement to a slow client */
+  private static final int SEND_TIME_LIMIT = 10_000;
+
+  /** Maximum size in bytes of the acknowledgements, which are buffered for a slow client */
+  private static final int SEND_BUFFER_SIZE_LIMIT = 512 * 1024;
+
+  private final RestController restController;
+
+  private final ObjectMapper objectMapper;
+
+  private final ObjectReader updateReader;
+
+  private final RestDaqProperties.Websocket properties;
+
+  private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService ackExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "UpdateAck");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public UpdateWebSocketHandler(RestController restController, ObjectMapper objectMapper, RestDaqProperties.Websocket properties) {
+    this.restController = restController;
+    this.objectMapper = objectMapper;
+    this.updateReader = objectMapper.readerFor(RestTagUpdate.class);
+    this.properties = properties;
+  }
+
+  @Override
+  public void afterConnectionEstablished(WebSocketSession session) {
+    session.setTextMessageSizeLimit(properties.getMaxMessageSize());
+    sessions.put(session.getId(), new SessionState(new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT, SEND_BUFFER_SIZE_LIMIT)));
+    log.debug("WebSocket session {} opened by {}", session.getId(), session.getRemoteAddress());
+  }
+
+  @Override
+  protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+    SessionState state = sessions.get(session.getId());
+    if (state == null) {
+      return;
+    }
+
+    for (String line : message.getPayload().split("\n")) {
+      line = line.trim();
+      if (!line.isEmpty()) {
+        process(state, line);
+      }
+    }
+  }
+
+  private void process(SessionState state, String line) {
+    HttpStatus status;
+    String error = null;
+    try {
+      if (line.startsWith("{")) {
+        status = restController.processUpdate(updateReader.readValue(line));
+      } else if (line.startsWith("[")) {
+        status = processCompact(objectMapper.readTree(line));
+      } else {
+        status = HttpStatus.BAD_REQUEST;
+        error = "Unsupported message format";
+      }
+    } catch (JsonProcessingException e) {
+      status = HttpStatus.BAD_REQUEST;
+      error = "Invalid JSON message: " + e.getOriginalMessage();
+    } catch (IOException | RuntimeException e) {
+      // The session would be closed, if the exception was propagated
+      log.warn("Unexpected problem while processing WebSocket message: {}", line, e);
+      status = HttpStatus.INTERNAL_SERVER_ERROR;
+      error = "Update could not be processed";
+    }
+    restController.count(ENDPOINT, status);
+
+    if (error == null && status != HttpStatus.OK && status != HttpStatus.ACCEPTED) {
+      error = "Update could not be processed";
+    }
+    state.record(status, error);
+  }
+
+  /**
+   * Processes a compact update of the form <code>[id, value]</code> or <code>[id, value, timestamp]</code>
+   */
+  private HttpStatus processCompact(JsonNode node) throws JsonProcessingException {
+    if (node.size() < 2 || node.size() > 3 || !node.get(0).canConvertToLong()
+        || (node.size() == 3 && !node.get(2).canConvertToLong())) {
+      return HttpStatus.BAD_REQUEST;
+    }
+
+    Object value = objectMapper.treeToValue(node.get(1), Object.class);
+    ValueUpdate valueUpdate = node.size() == 3 ? new ValueUpdate(value, "", node.get(2).asLong()) : new ValueUpdate(value);
+    return restController.processValue(node.get(0).asLong(), valueUpdate);
+  }
+
+  @Override
+  public void handleTransportError(WebSocketSession session, Throwable exception) {
+    log.warn("Transport error in WebSocket session {}: {}", session.getId(), exception.getMessage());
+  }
+
+  @Override
+  public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+    SessionState state = sessions.remove(session.getId());
+    if (state != null) {
+      state.close();
+    }
+    log.debug("WebSocket session {} closed with {}", session.getId(), status);
+  }
+
+  @Override
+  public void destroy() {
+    ackExecutor.shutdownNow();
+  }
+
+  /**
+   * @return Number of open WebSocket sessions
+   */
+  int getSessionCount() {
+    return sessions.size();
+  }
+
+  /**
+   * The sequence number and the pending acknowledgement of one session
+   */
+  private class SessionState {
+
+    private final WebSocketSession session;
+
+    private long sequence;
+
+    private UpdateAck ack = new UpdateAck();
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    SessionState(WebSocketSession session) {
+      this.session = session;
+    }
+
+    synchronized void record(HttpStatus status, String error) {
+      sequence++;
+      if (error == null) {
+        ack.setAccepted(ack.getAccepted() + 1);
+      } else {
+        ack.addRejection(sequence, status, error);
+      }
+
+      if (ack.size() >= properties.getAckBatchSize()) {
+        flush();
+      } else if (scheduledFlush == null) {
+        scheduledFlush = ackExecutor.schedule(this::flush, properties.getAckInterval(), TimeUnit.MILLISECONDS);
+      }
+    }
+
+    synchronized void flush() {
+      if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+        scheduledFlush = null;
+      }
+      if (ack.size() == 0 || !session.isOpen()) {
+        return;
+      }
+
+      ack.setLastSequence(sequence);
+      try {
+        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(ack)));
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not acknowledge updates up to {} in WebSocket session {}: {}", sequence, session.getId(), e.getMessage());
+      }
+      ack = new UpdateAck();
+    }
+
+    synchronized void close() {
+      if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+        scheduledFlush = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.http.pool.PoolStats;
+import org.springframework.http.HttpStatus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import cern.c2mon.daq.rest.webaccess.RESTConnector;
+
+/**
+ * Holds the Micrometer meters of the REST DAQ. All meter names start with
+ * <code>c2mon.daq.rest</code> and are exposed through the actuator
+ * <code>/actuator/metrics</code> endpoint.
+ * <p/>
+ * The meters, which are recorded on the hot path, are resolved once and
+ * cached, so that recording does not require a lookup in the registry.
+ */
+public class RestDaqMetrics {
+
+  /** Does not record anything. Used, if no meter registry is available (e.g. in unit tests). */
+  public static final RestDaqMetrics NOOP = new RestDaqMetrics(new CompositeMeterRegistry());
+
+  private static final String PREFIX = "c2mon.daq.rest.";
+
+  private final MeterRegistry registry;
+
+  private final Timer sendValueTimer;
+
+  private final Timer extractionTimer;
+
+  private final Counter freshnessExpirations;
+
+  private final Map<String, Map<HttpStatus, Counter>> postRequests = new ConcurrentHashMap<>();
+
+  private final Map<String, Map<GetOutcome, Timer>> getRequests = new ConcurrentHashMap<>();
+
+  /**
+   * Outcome of a periodic GET request
+   */
+  public enum GetOutcome {
+    SUCCESS, NOT_MODIFIED, ERROR, SKIPPED
+  }
+
+  public RestDaqMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    this.sendValueTimer = Timer.builder(PREFIX + "post.send")
+        .description("Time to forward a received value to the DAQ core")
+        .register(registry);
+    this.extractionTimer = Timer.builder(PREFIX + "get.extraction")
+        .description("Time to parse a GET response and to extract the values of all tags sharing it")
+        .register(registry);
+    this.freshnessExpirations = Counter.builder(PREFIX + "post.expirations")
+        .description("Number of POST tags invalidated, because no value was received within the expected interval")
+        .register(registry);
+    registerPoolGauge("leased", PoolStats::getLeased);
+    registerPoolGauge("pending", PoolStats::getPending);
+    registerPoolGauge("available", PoolStats::getAvailable);
+    registerPoolGauge("max", PoolStats::getMax);
+  }
+
+  /**
+   * Registers a gauge for the statistics of the HTTP connection pool. The
+   * statistics are read from the current pool, so that the gauge stays valid
+   * if the pool is re-created by {@link RESTConnector#configure}.
+   */
+  private void registerPoolGauge(String state, ToDoubleFunction<PoolStats> valueFunction) {
+    Gauge.builder(PREFIX + "http.connections", RESTConnector.class, c -> valueFunction.applyAsDouble(RESTConnector.getPoolStats()))
+        .description("Number of connections of the HTTP connection pool of the GET requests")
+        .tags("state", state)
+        .register(registry);
+  }
+
+  /**
+   * Counts a received POST message
+   *
+   * @param endpoint The endpoint, which received the message
+   * @param status   The status of the processing
+   */
+  public void postRequest(String endpoint, HttpStatus status) {
+    Map<HttpStatus, Counter> counters = postRequests.computeIfAbsent(endpoint, e -> new ConcurrentHashMap<>());
+    Counter counter = counters.get(status);
+    if (counter == null) {
+      counter = counters.computeIfAbsent(status, s -> Counter.builder(PREFIX + "post.requests")
+          .description("Number of received POST messages")
+          .tags("endpoint", endpoint, "status", s.name())
+          .register(registry));
+    }
+    counter.increment();
+  }
+
+  /**
+   * @return Timer for the forwarding of a POST value to the DAQ core
+   */
+  public Timer getSendValueTimer() {
+    return sendValueTimer;
+  }
+
+  /**
+   * Records the duration of a periodic GET request
+   *
+   * @param host     The host of the web service
+   * @param outcome  The outcome of the request
+   * @param duration The duration in nanoseconds
+   */
+  public void getRequest(String host, GetOutcome outcome, long duration) {
+    Map<GetOutcome, Timer> timers = getRequests.computeIfAbsent(host, h -> new ConcurrentHashMap<>());
+    Timer timer = timers.get(outcome);
+    if (timer == null) {
+      timer = timers.computeIfAbsent(outcome, o -> Timer.builder(PREFIX + "get.requests")
+          .description("Duration of the periodic GET requests")
+          .tags("host", host, "outcome", o.name())
+          .register(registry));
+    }
+    timer.record(duration, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return Timer for the JSON parsing and value extraction of a GET response
+   */
+  public Timer getExtractionTimer() {
+    return extractionTimer;
+  }
+
+  /**
+   * Counts an expired POST tag
+   */
+  public void freshnessExpired() {
+    freshnessExpirations.increment();
+  }
+
+  /**
+   * Records a call to the C2MON configuration service
+   *
+   * @param operation The called operation
+   * @param success   <code>true</code>, if the configuration was successful
+   * @param duration  The duration in nanoseconds
+   */
+  public void autoConfiguration(String operation, boolean success, long duration) {
+    Timer.builder(PREFIX + "autoconfiguration")
+        .description("Duration of the auto-configuration calls to the C2MON server")
+        .tags("operation", operation, "success", Boolean.toString(success))
+        .register(registry)
+        .record(duration, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Counts values of tags in auto-configuration, which have been dropped from the pending buffer
+   *
+   * @param reason The reason, why the values have been dropped
+   * @param count  The number of dropped values
+   */
+  public void pendingUpdatesDropped(String reason, int count) {
+    Counter.builder(PREFIX + "post.pending.dropped")
+        .description("Number of buffered values of tags in auto-configuration, which have been dropped")
+        .tags("reason", reason)
+        .register(registry)
+        .increment(count);
+  }
+
+  /**
+   * Records the duration of a phase of the equipment startup
+   *
+   * @param phase    The startup phase
+   * @param duration The duration in nanoseconds
+   */
+  public void startup(String phase, long duration) {
+    Timer.builder(PREFIX + "startup")
+        .description("Duration of the phases of the equipment startup")
+        .tags("phase", phase)
+        .register(registry)
+        .record(duration, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Registers a gauge. The returned meter has to be removed with {@link #remove(Meter)}, once the
+   * observed object is no longer in use.
+   *
+   * @param name          The name of the gauge without prefix
+   * @param description   The description of the gauge
+   * @param tags          The tags of the gauge
+   * @param object        The observed object
+   * @param valueFunction The function to get the value from the observed object
+   * @return the registered gauge
+   */
+  public <T> Meter gauge(String name, String description, Tags tags, T object, ToDoubleFunction<T> valueFunction) {
+    return Gauge.builder(PREFIX + name, object, valueFunction)
+        .description(description)
+        .tags(tags)
+        .register(registry);
+  }
+
+  /**
+   * Removes the given meter from the registry
+   *
+   * @param meter the meter to remove
+   */
+  public void remove(Meter meter) {
+    registry.remove(meter);
+  }
+}
@@ -0,0 +1,140 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.Objects;
+
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.DataTagDeadband;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+
+/**
+ * Suppresses polled values, which have not changed since the last value sent
+ * to the server. Numeric values are furthermore filtered with the value
+ * deadband configured on the {@link DataTagAddress} of the tag. The last value
+ * is nevertheless sent again, once the heartbeat interval has expired.
+ * <p/>
+ * The filter holds the state of a single tag and is not thread-safe. The
+ * {@link GetScheduler} guarantees that the responses of a poll group are
+ * handled one after the other.
+ */
+class ChangeFilter {
+
+  private final boolean enabled;
+
+  private final short deadbandType;
+
+  private final float deadband;
+
+  private final long heartbeatInterval;
+
+  /** The last value sent to the server or <code>null</code> */
+  private Object lastValue;
+
+  private long lastPublished;
+
+  ChangeFilter(boolean enabled, short deadbandType, float deadband, long heartbeatInterval) {
+    this.enabled = enabled;
+    this.deadbandType = deadbandType;
+    this.deadband = deadband;
+    this.heartbeatInterval = heartbeatInterval;
+  }
+
+  /**
+   * Creates the filter with the value deadband of the given tag
+   *
+   * @param tag               The polled tag
+   * @param enabled           <code>false</code> to let all values pass
+   * @param heartbeatInterval Time in milliseconds after which an unchanged value is sent again
+   * @return new filter instance
+   */
+  static ChangeFilter create(ISourceDataTag tag, boolean enabled, long heartbeatInterval) {
+    DataTagAddress address = tag.getAddress();
+    if (address == null) {
+      return new ChangeFilter(enabled, DataTagDeadband.DEADBAND_NONE, 0f, heartbeatInterval);
+    }
+    return new ChangeFilter(enabled, address.getValueDeadbandType(), address.getValueDeadband(), heartbeatInterval);
+  }
+
+  /**
+   * Decides, if the value has to be sent to the server. If so, it is remembered as last value.
+   *
+   * @param value     The extracted value
+   * @param timestamp The time of the poll
+   * @return <code>true</code>, if the value has changed or the heartbeat interval expired
+   */
+  boolean accept(Object value, long timestamp) {
+    if (enabled && lastValue != null && timestamp - lastPublished < heartbeatInterval && !hasChanged(value)) {
+      return false;
+    }
+
+    lastValue = value;
+    lastPublished = timestamp;
+    return true;
+  }
+
+  /**
+   * Returns the last value, if it has to be sent again for an unchanged
+   * resource. If the filter is disabled, the last value is sent with every
+   * poll, otherwise only once the heartbeat interval expired.
+   *
+   * @param timestamp The time of the poll
+   * @return The last value or <code>null</code>, if no heartbeat is due
+   */
+  Object heartbeat(long timestamp) {
+    if (lastValue == null || (enabled && timestamp - lastPublished < heartbeatInterval)) {
+      return null;
+    }
+    lastPublished = timestamp;
+    return lastValue;
+  }
+
+  /**
+   * Forgets the last value, so that the next value is sent in any case.
+   * Has to be called whenever the tag got invalidated.
+   */
+  void reset() {
+    lastValue = null;
+  }
+
+  private boolean hasChanged(Object value) {
+    if (Objects.equals(value, lastValue)) {
+      return false;
+    }
+    if (!(value instanceof Number) || !(lastValue instanceof Number)) {
+      return true;
+    }
+
+    double current = ((Number) value).doubleValue();
+    double previous = ((Number) lastValue).doubleValue();
+    double difference = Math.abs(current - previous);
+
+    switch (deadbandType) {
+      case DataTagDeadband.DEADBAND_EQUIPMENT_ABSOLUTE:
+      case DataTagDeadband.DEADBAND_PROCESS_ABSOLUTE:
+      case DataTagDeadband.DEADBAND_PROCESS_ABSOLUTE_VALUE_DESCR_CHANGE:
+        return difference >= deadband;
+      case DataTagDeadband.DEADBAND_EQUIPMENT_RELATIVE:
+      case DataTagDeadband.DEADBAND_PROCESS_RELATIVE:
+      case DataTagDeadband.DEADBAND_PROCESS_RELATIVE_VALUE_DESCR_CHANGE:
+        // the relative deadband is given in percent
+        return previous == 0 || difference * 100 / Math.abs(previous) >= deadband;
+      default:
+        return true;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps track of the last time a value was received for the POST tags. A
+ * received value only records the current timestamp, whereas the expiration
+ * is detected lazily by {@link #run()}, which has to be called periodically
+ * by the scheduling engine.
+ * <p/>
+ * An expired tag is reported only once, until a new value is received.
+ */
+@Slf4j
+class FreshnessTracker implements Runnable {
+
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+  /** Called with the tag id, once a tag has expired */
+  private final LongConsumer expirationListener;
+
+  FreshnessTracker(LongConsumer expirationListener) {
+    this.expirationListener = expirationListener;
+  }
+
+  /**
+   * Starts tracking the given tag. The timeout starts immediately.
+   *
+   * @param id      The tag id
+   * @param timeout Time in milliseconds after which the tag expires, if no value has been received
+   * @return handle to stop the tracking of the tag
+   */
+  ScheduledTask track(Long id, long timeout) {
+    Entry entry = new Entry(id, timeout, System.currentTimeMillis());
+    Entry previous = entries.put(id, entry);
+    if (previous != null) {
+      log.debug("Tag #{} was already tracked, restarting the timeout", id);
+    }
+    return entry;
+  }
+
+  /**
+   * Records that a value has been received for the given tag
+   *
+   * @param id The tag id
+   * @return <code>false</code>, if the tag is not tracked
+   */
+  boolean touch(Long id) {
+    Entry entry = entries.get(id);
+    if (entry == null) {
+      return false;
+    }
+    entry.lastUpdate = System.currentTimeMillis();
+    return true;
+  }
+
+  /**
+   * @return The number of tracked tags
+   */
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Checks all tracked tags and notifies the listener about the expired ones
+   */
+  @Override
+  public void run() {
+    long now = System.currentTimeMillis();
+    for (Entry entry : entries.values()) {
+      long lastUpdate = entry.lastUpdate;
+      if (lastUpdate != entry.reportedUpdate && now - lastUpdate >= entry.timeout) {
+        entry.reportedUpdate = lastUpdate;
+        try {
+          expirationListener.accept(entry.id);
+        } catch (RuntimeException e) {
+          log.warn("Problem occurred while reporting the expiration of tag #{}", entry.id, e);
+        }
+      }
+    }
+  }
+
+  private class Entry implements ScheduledTask {
+
+    private final long id;
+
+    private final long timeout;
+
+    /** Written by the receiving threads, read by the sweeper */
+    private volatile long lastUpdate;
+
+    /** The last update for which the expiration was reported. Only accessed by the sweeper. */
+    private long reportedUpdate = Long.MIN_VALUE;
+
+    Entry(long id, long timeout, long lastUpdate) {
+      this.id = id;
+      this.timeout = timeout;
+      this.lastUpdate = lastUpdate;
+    }
+
+    @Override
+    public boolean cancel() {
+      return entries.remove(id, this);
+    }
+  }
+}
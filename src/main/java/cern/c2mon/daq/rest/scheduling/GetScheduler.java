@@ -16,19 +16,40 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest.scheduling;
 
-import java.util.TimerTask;
-
-import org.springframework.web.client.RestClientException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.ReadContext;
 
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 
 import cern.c2mon.daq.common.IEquipmentMessageSender;
 import cern.c2mon.daq.rest.address.RestGetAddress;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics.GetOutcome;
+import cern.c2mon.daq.rest.scheduling.HostCircuitBreaker.Permit;
+import cern.c2mon.daq.rest.scheduling.HostCircuitBreaker.State;
+import cern.c2mon.daq.rest.webaccess.AsyncRESTConnector;
 import cern.c2mon.daq.rest.webaccess.RESTConnector;
+import cern.c2mon.daq.rest.webaccess.RestResponse;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
-import cern.c2mon.shared.common.datatag.SourceDataTag;
 import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
 import cern.c2mon.shared.common.datatag.ValueUpdate;
 import cern.c2mon.shared.common.datatag.util.SourceDataTagQualityCode;
@@ -37,31 +58,178 @@ import cern.c2mon.shared.common.type.TypeConverter;
 
 
 /**
- * This class managed the Timer threads to for making requests to the
- * Webservice. It creates the timer and adds Task to the Timer which are making
- * the request. Besides creating the task this class also manges the deleting
- * of obsolete tasks.
+ * This class manages the scheduling of the requests to the Webservice. It
+ * adds the Tasks which are making the request to the scheduling engine.
+ * Besides creating the task this class also manges the deleting of obsolete
+ * tasks.
+ * <p/>
+ * Tags with the same url and frequency are grouped together, so that only one
+ * request is sent per group and period. The requests themselves are sent
+ * through the {@link AsyncRESTConnector}, so that a slow endpoint does not
+ * delay the polling of the other tags. With <code>virtualThreads</code>
+ * enabled, every request blocks on its own virtual thread.
+ * <p/>
+ * If conditional requests are enabled, every group remembers the ETag and
+ * Last-Modified date of its last response. An unchanged resource (304) is
+ * neither parsed nor sent to the server.
+ * <p/>
+ * Values which did not change, or only within the value deadband of the tag,
+ * are not sent to the server either. Instead the last value is sent again,
+ * once the heartbeat interval has expired (see {@link ChangeFilter}).
+ * <p/>
+ * The groups of the same host share a {@link HostCircuitBreaker}. Once a host
+ * failed several times in a row, all its tags are invalidated at once and no
+ * further requests are sent, except for single probes with exponential backoff.
+ * <p/>
+ * The first request of a group is delayed according to the {@link PhaseSpread}.
+ * With <code>HASH</code> or <code>JITTER</code> the groups configured at
+ * startup do not fire at the same instant in every period.
  *
  * @author Franz Ritter
  */
 @Slf4j
 public class GetScheduler extends RestScheduler {
 
+  /**
+   * Defines the initial delay of the periodic requests
+   */
+  public enum PhaseSpread {
+    /** The first request is sent after one period */
+    NONE,
+    /** The first request is delayed by a fraction of the period, which is derived from the url and frequency */
+    HASH,
+    /** The first request is delayed by a random fraction of the period */
+    JITTER
+  }
+
+  /** Duration in milliseconds of a time slot of the request rate monitor */
+  private static final long RATE_SLOT_DURATION = 100;
+
+  /** Number of time slots of the request rate monitor, which defines the window of one minute */
+  private static final int RATE_SLOTS = 600;
+
+  /**
+   * Sends the GET requests asynchronously with a bounded concurrency
+   */
+  private final AsyncRESTConnector connector;
+
+  /**
+   * The tags grouped by url and frequency. Each group issues a single request per period.
+   */
+  private final Map<PollKey, PollGroup> pollGroups = new HashMap<>();
+
+  /**
+   * Send conditional requests with the validators of the previous response
+   */
+  private final boolean conditionalRequests;
+
+  /**
+   * Suppress unchanged values
+   */
+  private final boolean filterUnchangedValues;
+
+  /**
+   * Interval in milliseconds after which an unchanged value is sent again
+   */
+  private final long heartbeatInterval;
+
+  /**
+   * The circuit breakers of the polled hosts. Guarded by pollGroups for creation and removal.
+   */
+  private final Map<String, HostCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+  private final RestDaqProperties.Get settings;
+
+  /**
+   * Monitors the distribution of the sent requests over time
+   */
+  private final RequestRateMonitor rateMonitor = new RequestRateMonitor(RATE_SLOT_DURATION, RATE_SLOTS);
+
   public GetScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration) {
-    super(sender, configuration);
+    this(sender, configuration, new RestDaqProperties());
+  }
+
+  public GetScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration, RestDaqProperties properties) {
+    this(sender, configuration, properties, RestDaqMetrics.NOOP);
+  }
+
+  public GetScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration, RestDaqProperties properties,
+                      RestDaqMetrics metrics) {
+    super(sender, configuration, properties, metrics);
+    this.connector = new AsyncRESTConnector(properties.getGet().getMaxConcurrentRequests(),
+        properties.getGet().getMaxConcurrentRequestsPerHost(), properties.isVirtualThreads());
+    this.conditionalRequests = properties.getGet().isConditionalRequests();
+    this.filterUnchangedValues = properties.getGet().isFilterUnchangedValues();
+    this.heartbeatInterval = properties.getGet().getHeartbeatInterval();
+    this.settings = properties.getGet();
+    registerGauge("get.active", "Number of GET requests in flight", connector, AsyncRESTConnector::getActiveRequests);
+    registerGauge("get.openCircuits", "Number of hosts, for which the requests are suspended", circuitBreakers,
+        breakers -> breakers.values().stream().filter(breaker -> breaker.getState() != State.CLOSED).count());
+    registerGauge("get.rate.peakToMean", "Peak-to-mean ratio of the GET requests per 100 ms over the last minute",
+        rateMonitor, RequestRateMonitor::peakToMean);
   }
 
   @Override
   public void addTask(Long id) {
-    // create task
-    RestGetAddress hardwareAddress = (RestGetAddress) this.equipmentConfiguration.getSourceDataTag(id)
-        .getHardwareAddress();
-    SendRequestTask task = new SendRequestTask(hardwareAddress.getUrl(), id, hardwareAddress.getJsonPathExpression());
+    addTasks(Collections.singletonList(this.equipmentConfiguration.getSourceDataTag(id)));
+  }
+
+  /**
+   * Adds the tags with a single acquisition of the poll group lock. The
+   * information needed for the value extraction is resolved beforehand.
+   */
+  @Override
+  public void addTasks(Collection<? extends ISourceDataTag> dataTags) {
+    Map<PollKey, List<PolledTag>> tagsByKey = new LinkedHashMap<>();
+    for (ISourceDataTag dataTag : dataTags) {
+      RestGetAddress hardwareAddress = (RestGetAddress) dataTag.getHardwareAddress();
+      PollKey key = new PollKey(hardwareAddress.getUrl(), hardwareAddress.getFrequency());
+
+      // resolve everything needed for the value extraction only once
+      PolledTag polledTag = new PolledTag(dataTag.getId(), hardwareAddress.getJsonPath(), TypeConverter.getType(dataTag.getDataType()),
+          ChangeFilter.create(dataTag, filterUnchangedValues, heartbeatInterval));
+      tagsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(polledTag);
+    }
 
-    //save the Task in map and add it to the timer
-    idToTask.put(id, task);
+    synchronized (pollGroups) {
+      for (Map.Entry<PollKey, List<PolledTag>> entry : tagsByKey.entrySet()) {
+        PollKey key = entry.getKey();
 
-    timer.schedule(task, hardwareAddress.getFrequency(), hardwareAddress.getFrequency());
+        // tags with the same url and frequency share one request
+        PollGroup group = pollGroups.computeIfAbsent(key, PollGroup::new);
+        for (PolledTag polledTag : entry.getValue()) {
+          group.members.put(polledTag.id, polledTag);
+          // save the handle of the group membership in map
+          ScheduledTask previous = idToTask.put(polledTag.id, new PollGroupMembership(group, polledTag.id));
+          // a re-added tag must leave the group of its previous url or frequency
+          if (previous instanceof PollGroupMembership && ((PollGroupMembership) previous).group != group) {
+            previous.cancel();
+          }
+        }
+        // the new tags need the full response, even if the resource has not changed
+        group.lastResponse = null;
+
+        if (group.scheduledTask == null) {
+          group.scheduledTask = engine.scheduleAtFixedRate(group, getInitialDelay(key), key.frequency);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the delay of the first request of the group, which is within one period
+   */
+  private long getInitialDelay(PollKey key) {
+    switch (settings.getPhaseSpread()) {
+      case HASH:
+        // spread the bits of the hash code, since similar urls have similar hash codes
+        int hash = key.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), key.frequency);
+      case JITTER:
+        return ThreadLocalRandom.current().nextLong(key.frequency);
+      default:
+        return key.frequency;
+    }
   }
 
   @Override
@@ -77,65 +245,367 @@ public class GetScheduler extends RestScheduler {
     equipmentMessageSender.update(id, new ValueUpdate(restMessage, System.currentTimeMillis()));
   }
 
+  @Override
+  public void shutdown() {
+    super.shutdown();
+    connector.shutdown();
+  }
+
+  /**
+   * Identifies the tags which can share one request
+   */
+  @Value
+  private static class PollKey {
+    String url;
+    int frequency;
+  }
+
+  /**
+   * Holds the pre-resolved information to extract the value of a tag from the response
+   */
+  @Value
+  static class PolledTag {
+    Long id;
+    /** compiled jsonPath expression or <code>null</code> */
+    JsonPath jsonPath;
+    Class<?> dataType;
+    /** Guarded by the inFlight flag of the {@link PollGroup} */
+    ChangeFilter changeFilter;
+
+    /**
+     * Extracts the tag value from the response
+     *
+     * @param restMessage The answer from the web service
+     * @param document    The parsed answer, which is shared between all tags of a group.
+     *                    It can be <code>null</code>, if the tag has no jsonPath expression.
+     * @return The value to be sent to the server
+     */
+    Object extractValue(String restMessage, ReadContext document) {
+      return jsonPath != null ? document.read(jsonPath, dataType) : restMessage;
+    }
+  }
+
   /**
-   * A instance of the SendRequestTask holds all information for sending a GET
-   * request to a webservice.
+   * A instance of the PollGroup holds all information for sending a GET
+   * request to a webservice. The response is shared by all tags of the group.
    */
-  class SendRequestTask extends TimerTask {
+  class PollGroup implements Runnable {
 
-    private String url;
+    private final PollKey key;
 
-    private Long id;
+    /** Host of the url, which is used as metrics tag */
+    private final String host;
 
-    private String jsonPathExpression;
+    /** Shared by all groups of the same host */
+    private final HostCircuitBreaker circuitBreaker;
 
-    SendRequestTask(String url, Long id, String jsonPathExpression) {
-      this.url = url;
-      this.id = id;
-      this.jsonPathExpression = jsonPathExpression;
+    /**
+     * The tags of the group
+     */
+    private final Map<Long, PolledTag> members = new ConcurrentHashMap<>();
+
+    /** Guarded by pollGroups */
+    private ScheduledTask scheduledTask;
+
+    /**
+     * Prevents that requests of the same group pile up, if the endpoint is slower than the frequency
+     */
+    private final AtomicBoolean inFlight = new AtomicBoolean(false);
+
+    /**
+     * The validators of the last response, which are sent with conditional requests
+     */
+    private volatile RestResponse lastResponse;
+
+    PollGroup(PollKey key) {
+      this.key = key;
+      this.host = AsyncRESTConnector.getHost(key.url);
+      this.circuitBreaker = circuitBreakers.computeIfAbsent(host, h -> new HostCircuitBreaker(
+          settings.getCircuitBreakerThreshold(), settings.getCircuitBreakerInitialBackoff(), settings.getCircuitBreakerMaxBackoff()));
     }
 
     /**
      * Run method for the given Thread to make a get Request based on the given
-     * url to a web service. Since this thread is managed my a Timer the run
-     * method will be triggered in a given interval.
+     * url to a web service. Since this task is managed by the scheduling engine
+     * the run method will be triggered in a given interval.
      * <p/>
-     * After receiving the message from the web service this method also sends
-     * the answer from service to the server.
+     * The request is sent asynchronously. After receiving the message from the
+     * web service the answer is sent to the server by {@link #handleResponse(String, Throwable)}.
      */
     @Override
     public void run() {
+      if (!inFlight.compareAndSet(false, true)) {
+        log.debug("Skipping request to {}, since the previous request is still in progress", key.url);
+        return;
+      }
 
-      SourceDataTag sdt = (SourceDataTag) equipmentConfiguration.getSourceDataTags().get(id);
-      try {
-        Object serverMessage;
+      Permit permit = circuitBreaker.acquire(System.currentTimeMillis());
+      if (permit == Permit.DENIED) {
+        log.trace("Skipping request to {}, since the requests to host {} are suspended", key.url, host);
+        inFlight.set(false);
+        return;
+      }
+      boolean probe = permit == Permit.PROBE;
+      rateMonitor.record(System.currentTimeMillis());
 
-        // request to the web service
-        String restMessage = RESTConnector.sendAndReceiveRequest(url);
-        Class<?> dataType = TypeConverter.getType(sdt.getDataType());
+      long start = System.nanoTime();
+      if (conditionalRequests) {
+        connector.sendConditionalRequest(key.url, lastResponse).whenComplete((response, error) -> {
+          try {
+            recordRequest(start, error, response != null && response.isNotModified());
+            if (updateCircuitBreaker(error, probe)) {
+              handleConditionalResponse(response, error);
+            }
+          } finally {
+            inFlight.set(false);
+          }
+        });
+      } else {
+        connector.sendAndReceiveRequest(key.url).whenComplete((restMessage, error) -> {
+          try {
+            recordRequest(start, error, false);
+            if (updateCircuitBreaker(error, probe)) {
+              handleResponse(restMessage, error);
+            }
+          } finally {
+            inFlight.set(false);
+          }
+        });
+      }
+    }
 
-        // convert Message if jsonPathExpression is given
-        if (jsonPathExpression != null) {
-          serverMessage = JsonPath.parse(restMessage).read(jsonPathExpression, dataType);
+    /**
+     * Reports the result of the request to the circuit breaker of the host.
+     * Only connection problems and server errors count as failure, since the
+     * host is reachable otherwise.
+     *
+     * @return <code>false</code>, if the tags have already been invalidated by the circuit breaker
+     */
+    private boolean updateCircuitBreaker(Throwable error, boolean probe) {
+      long now = System.currentTimeMillis();
+      Throwable cause = unwrap(error);
+
+      if (cause instanceof RejectedExecutionException) {
+        if (probe) {
+          circuitBreaker.onSkipped(now);
         }
-        else {
-          serverMessage = restMessage;
+        return true;
+      }
+
+      if (!(cause instanceof ResourceAccessException || cause instanceof HttpServerErrorException)) {
+        if (circuitBreaker.onSuccess()) {
+          log.info("Host {} is available again, resuming its requests", host);
         }
+        return true;
+      }
 
-        // sending the reply to the server
-        equipmentMessageSender.update(id, new ValueUpdate(serverMessage, System.currentTimeMillis()));
+      if (probe) {
+        circuitBreaker.onFailure(now, true);
+        log.debug("Host {} is still not available, next probe in {} ms", host, circuitBreaker.getBackoff());
+        lastResponse = null;
+        return false;
+      }
 
-      } catch (RestClientException e) {
-        SourceDataTagQuality tagQuality = new SourceDataTagQuality(SourceDataTagQualityCode.DATA_UNAVAILABLE);
-        tagQuality.setDescription("Problem occurred at the REST get-operation (with the tag " + id + ") : "
-            + e.getMessage());
-        log.warn("Problem occurred at the REST get-operation: " + e.getMessage());
-        equipmentMessageSender.update(id, tagQuality);
+      if (circuitBreaker.onFailure(now, false)) {
+        log.warn("Host {} failed {} times in a row, suspending its requests for {} ms: {}",
+            host, settings.getCircuitBreakerThreshold(), circuitBreaker.getBackoff(), cause.getMessage());
+        invalidateHost(cause);
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Invalidates the tags of all groups of the host in one pass. Groups with
+     * a request in flight are skipped, since they are invalidated by the
+     * failure of their own request.
+     */
+    private void invalidateHost(Throwable cause) {
+      List<PollGroup> groups;
+      synchronized (pollGroups) {
+        groups = pollGroups.values().stream().filter(group -> group.host.equals(host)).collect(Collectors.toList());
+      }
+
+      for (PollGroup group : groups) {
+        if (group == this) {
+          invalidateAll(cause);
+        } else if (group.inFlight.compareAndSet(false, true)) {
+          try {
+            group.invalidateAll(cause);
+          } finally {
+            group.inFlight.set(false);
+          }
+        }
+      }
+    }
 
+    private void recordRequest(long start, Throwable error, boolean notModified) {
+      GetOutcome outcome;
+      if (error == null) {
+        outcome = notModified ? GetOutcome.NOT_MODIFIED : GetOutcome.SUCCESS;
+      } else {
+        outcome = unwrap(error) instanceof RejectedExecutionException ? GetOutcome.SKIPPED : GetOutcome.ERROR;
+      }
+      metrics.getRequest(host, outcome, System.nanoTime() - start);
+    }
+
+    /**
+     * Skips the response, if the resource has not been modified since the
+     * last request. Otherwise the validators are remembered for the next
+     * request and the response is handled by {@link #handleResponse(String, Throwable)}.
+     */
+    private void handleConditionalResponse(RestResponse response, Throwable error) {
+      if (error != null) {
+        handleResponse(null, error);
+        return;
       }
 
+      if (response.isNotModified()) {
+        log.trace("Resource {} not modified", key.url);
+        sendHeartbeats(System.currentTimeMillis());
+        return;
+      }
+
+      lastResponse = response.hasValidators() ? response : null;
+      handleResponse(response.getBody(), null);
     }
 
+    /**
+     * Converts the received message for every tag of the group, if a
+     * jsonPathExpression is given, and sends it to the server. In case of a
+     * problem with the request all tags of the group get invalidated.
+     *
+     * @param restMessage The answer from the web service
+     * @param error       The problem which occurred at the request, or <code>null</code>
+     */
+    private void handleResponse(String restMessage, Throwable error) {
+      Throwable cause = unwrap(error);
+
+      if (cause instanceof RejectedExecutionException) {
+        log.debug("Skipping request to {}: {}", key.url, cause.getMessage());
+        return;
+      }
+
+      if (cause != null) {
+        log.warn("Problem occurred at the REST get-operation: " + cause.getMessage());
+        invalidateAll(cause);
+        return;
+      }
+
+      long timestamp = System.currentTimeMillis();
+      long start = System.nanoTime();
+      ReadContext document = null;
+      RuntimeException parseError = null;
+
+      // the response is parsed only once for all tags of the group
+      if (members.values().stream().anyMatch(polledTag -> polledTag.jsonPath != null)) {
+        try {
+          document = JsonPath.parse(restMessage);
+        } catch (RuntimeException e) {
+          parseError = e;
+        }
+      }
+
+      for (PolledTag polledTag : members.values()) {
+        if (parseError != null && polledTag.jsonPath != null) {
+          invalidate(polledTag, parseError);
+        } else {
+          sendValue(polledTag, restMessage, document, timestamp);
+        }
+      }
+      metrics.getExtractionTimer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void sendValue(PolledTag polledTag, String restMessage, ReadContext document, long timestamp) {
+      try {
+        // convert Message if jsonPathExpression is given
+        Object serverMessage = polledTag.extractValue(restMessage, document);
+
+        // sending the reply to the server, if the value has changed
+        if (polledTag.changeFilter.accept(serverMessage, timestamp)) {
+          equipmentMessageSender.update(polledTag.id, new ValueUpdate(serverMessage, timestamp));
+        }
+
+      } catch (RuntimeException e) {
+        invalidate(polledTag, e);
+      }
+    }
+
+    /**
+     * Sends the last value of the tags again after a 304 (Not Modified). With
+     * the change filter only the tags are sent, for which the heartbeat
+     * interval expired.
+     */
+    private void sendHeartbeats(long timestamp) {
+      for (PolledTag polledTag : members.values()) {
+        Object lastValue = polledTag.changeFilter.heartbeat(timestamp);
+        if (lastValue != null) {
+          equipmentMessageSender.update(polledTag.id, new ValueUpdate(lastValue, timestamp));
+        }
+      }
+    }
+
+    /**
+     * Invalidates all tags of the group, since the request failed
+     */
+    private void invalidateAll(Throwable cause) {
+      // the invalidated tags need the full response, once the web service is back
+      lastResponse = null;
+      for (PolledTag polledTag : members.values()) {
+        polledTag.changeFilter.reset();
+        SourceDataTagQuality tagQuality = new SourceDataTagQuality(SourceDataTagQualityCode.DATA_UNAVAILABLE);
+        tagQuality.setDescription("Problem occurred at the REST get-operation (with the tag " + polledTag.id + ") : "
+            + cause.getMessage());
+        equipmentMessageSender.update(polledTag.id, tagQuality);
+      }
+    }
+
+    private void invalidate(PolledTag polledTag, RuntimeException e) {
+      Long id = polledTag.id;
+      polledTag.changeFilter.reset();
+      SourceDataTagQuality tagQuality = new SourceDataTagQuality(SourceDataTagQualityCode.DATA_UNAVAILABLE);
+      tagQuality.setDescription("Problem occurred at processing the REST get-operation (with the tag " + id + ") : "
+          + e.getMessage());
+      log.warn("Problem occurred at processing the REST get-operation of tag #{}: {}", id, e.getMessage());
+      equipmentMessageSender.update(id, tagQuality);
+    }
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
   }
 
+  /**
+   * Handle of a tag within its {@link PollGroup}. Cancelling it removes the
+   * tag from the group, and the group from the scheduling engine once it is empty.
+   */
+  private class PollGroupMembership implements ScheduledTask {
+
+    private final PollGroup group;
+
+    private final Long id;
+
+    PollGroupMembership(PollGroup group, Long id) {
+      this.group = group;
+      this.id = id;
+    }
+
+    @Override
+    public boolean cancel() {
+      synchronized (pollGroups) {
+        if (group.members.remove(id) == null) {
+          return false;
+        }
+        if (group.members.isEmpty()) {
+          group.scheduledTask.cancel();
+          pollGroups.remove(group.key);
+          if (pollGroups.values().stream().noneMatch(other -> other.host.equals(group.host))) {
+            circuitBreakers.remove(group.host);
+            connector.removeHost(group.host);
+          }
+        }
+        return true;
+      }
+    }
+  }
 }
@@ -0,0 +1,348 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scheduling engine based on a hashed timing wheel.
+ * <p/>
+ * Time is divided into ticks of a fixed duration. Every task is hashed into
+ * the bucket of the tick in which its deadline falls, together with the
+ * number of full wheel rotations left before it expires. Insert and cancel
+ * are therefore O(1) and no purge of cancelled tasks is needed. The price
+ * is a timing precision which is bounded by the tick duration.
+ * <p/>
+ * New and cancelled tasks are handed over to the single worker thread
+ * through lock-free queues, so that calling threads never contend with the
+ * expiration of the wheel.
+ */
+@Slf4j
+public class HashedWheelSchedulingEngine implements SchedulingEngine {
+
+  /** Upper limit of tasks transferred into the wheel per tick, to keep the tick duration stable */
+  private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+  private final long tickDuration;
+
+  private final Bucket[] wheel;
+
+  private final int mask;
+
+  private final Queue<WheelTask> newTasks = new ConcurrentLinkedQueue<>();
+
+  private final Queue<WheelTask> cancelledTasks = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger pendingTasks = new AtomicInteger();
+
+  private final Thread worker;
+
+  private final long startTime;
+
+  private volatile boolean running = true;
+
+  /** Current tick, only accessed by the worker thread */
+  private long tick;
+
+  /**
+   * @param name          name of the worker thread
+   * @param tickDuration  duration of a tick in milliseconds
+   * @param ticksPerWheel number of buckets of the wheel, rounded up to the next power of two
+   */
+  public HashedWheelSchedulingEngine(String name, long tickDuration, int ticksPerWheel) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+    }
+    if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+      throw new IllegalArgumentException("ticksPerWheel must be in range (0, 2^30]: " + ticksPerWheel);
+    }
+
+    this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+    this.wheel = new Bucket[normalize(ticksPerWheel)];
+    for (int i = 0; i < wheel.length; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = wheel.length - 1;
+
+    this.startTime = System.nanoTime();
+    this.worker = new Thread(this::work, name);
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  private static int normalize(int ticksPerWheel) {
+    int normalized = 1;
+    while (normalized < ticksPerWheel) {
+      normalized <<= 1;
+    }
+    return normalized;
+  }
+
+  @Override
+  public ScheduledTask schedule(Runnable task, long delay) {
+    return submit(task, delay, 0L);
+  }
+
+  @Override
+  public ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("period must be greater than 0: " + period);
+    }
+    return submit(task, initialDelay, TimeUnit.MILLISECONDS.toNanos(period));
+  }
+
+  private ScheduledTask submit(Runnable task, long delay, long period) {
+    if (!running) {
+      throw new IllegalStateException("Scheduling engine has already been shut down");
+    }
+    long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, delay));
+    WheelTask wheelTask = new WheelTask(task, deadline, period);
+    pendingTasks.incrementAndGet();
+    newTasks.add(wheelTask);
+    return wheelTask;
+  }
+
+  @Override
+  public int size() {
+    return pendingTasks.get();
+  }
+
+  @Override
+  public void shutdown() {
+    running = false;
+    worker.interrupt();
+  }
+
+  private void work() {
+    while (running) {
+      long deadline = waitForNextTick();
+      if (deadline < 0) {
+        continue;
+      }
+
+      removeCancelledTasks();
+      transferNewTasks();
+      wheel[(int) (tick & mask)].expire(deadline);
+      tick++;
+    }
+    newTasks.clear();
+    cancelledTasks.clear();
+  }
+
+  /**
+   * Sleeps until the next tick is reached.
+   *
+   * @return the deadline of the current tick, relative to the start time,
+   *         or a negative value if the worker was interrupted
+   */
+  private long waitForNextTick() {
+    long deadline = tickDuration * (tick + 1);
+    while (true) {
+      long currentTime = System.nanoTime() - startTime;
+      long sleepTime = TimeUnit.NANOSECONDS.toMillis(deadline - currentTime + 999_999);
+      if (sleepTime <= 0) {
+        return currentTime;
+      }
+
+      try {
+        Thread.sleep(sleepTime);
+      } catch (InterruptedException e) {
+        if (!running) {
+          return -1;
+        }
+      }
+    }
+  }
+
+  private void removeCancelledTasks() {
+    WheelTask task;
+    while ((task = cancelledTasks.poll()) != null) {
+      if (task.bucket != null) {
+        task.bucket.remove(task);
+      }
+    }
+  }
+
+  private void transferNewTasks() {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      WheelTask task = newTasks.poll();
+      if (task == null) {
+        break;
+      }
+      if (task.state.get() == WheelTask.ST_CANCELLED) {
+        continue;
+      }
+
+      long calculated = task.deadline / tickDuration;
+      task.remainingRounds = (calculated - tick) / wheel.length;
+
+      // Ensure we don't schedule for the past
+      long ticks = Math.max(calculated, tick);
+      wheel[(int) (ticks & mask)].add(task);
+    }
+  }
+
+  private void execute(WheelTask task) {
+    try {
+      task.task.run();
+    } catch (RuntimeException e) {
+      log.warn("Unexpected problem while executing scheduled task", e);
+    }
+
+    if (task.period > 0 && task.state.get() == WheelTask.ST_INIT) {
+      // skip executions which were missed, instead of catching up with a burst
+      long now = System.nanoTime() - startTime;
+      task.deadline += task.period;
+      if (task.deadline < now) {
+        task.deadline += ((now - task.deadline) / task.period + 1) * task.period;
+      }
+      newTasks.add(task);
+    }
+  }
+
+  /**
+   * Handle of a task within the wheel
+   */
+  private final class WheelTask implements ScheduledTask {
+
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final Runnable task;
+
+    private final long period;
+
+    private long deadline;
+
+    private long remainingRounds;
+
+    private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+    /** The bucket and links are only accessed by the worker thread */
+    private Bucket bucket;
+    private WheelTask next;
+    private WheelTask prev;
+
+    WheelTask(Runnable task, long deadline, long period) {
+      this.task = task;
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    @Override
+    public boolean cancel() {
+      if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+        return false;
+      }
+      pendingTasks.decrementAndGet();
+      cancelledTasks.add(this);
+      return true;
+    }
+
+    /**
+     * Marks a one-shot task as expired
+     * @return <code>false</code>, if the task got cancelled in the meantime
+     */
+    boolean expire() {
+      if (period > 0) {
+        return state.get() == ST_INIT;
+      }
+      if (state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+        pendingTasks.decrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Doubly linked list of tasks, which is only accessed by the worker thread
+   */
+  private final class Bucket {
+
+    private WheelTask head;
+    private WheelTask tail;
+
+    void add(WheelTask task) {
+      task.bucket = this;
+      if (head == null) {
+        head = tail = task;
+      } else {
+        tail.next = task;
+        task.prev = tail;
+        tail = task;
+      }
+    }
+
+    void expire(long deadline) {
+      WheelTask task = head;
+      while (task != null) {
+        WheelTask next = task.next;
+        if (task.remainingRounds <= 0) {
+          remove(task);
+          if (task.deadline <= deadline) {
+            if (task.expire()) {
+              execute(task);
+            }
+          } else {
+            // should never happen, as the task was placed into the wrong bucket
+            log.warn("Task deadline {} is behind wheel deadline {}", task.deadline, deadline);
+            newTasks.add(task);
+          }
+        } else if (task.state.get() == WheelTask.ST_CANCELLED) {
+          remove(task);
+        } else {
+          task.remainingRounds--;
+        }
+        task = next;
+      }
+    }
+
+    void remove(WheelTask task) {
+      if (task.bucket != this) {
+        return;
+      }
+      WheelTask next = task.next;
+      if (task.prev != null) {
+        task.prev.next = next;
+      }
+      if (task.next != null) {
+        task.next.prev = task.prev;
+      }
+
+      if (task == head) {
+        if (task == tail) {
+          tail = null;
+          head = null;
+        } else {
+          head = next;
+        }
+      } else if (task == tail) {
+        tail = task.prev;
+      }
+      task.prev = null;
+      task.next = null;
+      task.bucket = null;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+/**
+ * Circuit breaker for the GET requests to one host. After the configured
+ * number of consecutive failures the circuit opens and no requests are sent
+ * to the host anymore. Once the backoff time has elapsed, a single probe
+ * request is allowed. If it succeeds the circuit closes again, otherwise the
+ * backoff is doubled up to the configured maximum.
+ * <p/>
+ * All timestamps are given in milliseconds by the caller.
+ */
+class HostCircuitBreaker {
+
+  enum State {
+    /** Requests are sent */
+    CLOSED,
+    /** Requests are skipped until the backoff time has elapsed */
+    OPEN,
+    /** A single probe request is in flight */
+    HALF_OPEN
+  }
+
+  enum Permit {
+    /** The request must not be sent */
+    DENIED,
+    /** The request may be sent */
+    GRANTED,
+    /** The request may be sent as probe of an open circuit */
+    PROBE
+  }
+
+  private final int failureThreshold;
+
+  private final long initialBackoff;
+
+  private final long maxBackoff;
+
+  private State state = State.CLOSED;
+
+  private int failures;
+
+  private long backoff;
+
+  private long retryAt;
+
+  /**
+   * @param failureThreshold Number of consecutive failures after which the circuit opens.
+   *                         The circuit never opens, if it is lower than 1.
+   * @param initialBackoff   Time in milliseconds until the first probe request
+   * @param maxBackoff       Maximum time in milliseconds between two probe requests
+   */
+  HostCircuitBreaker(int failureThreshold, long initialBackoff, long maxBackoff) {
+    this.failureThreshold = failureThreshold;
+    this.initialBackoff = initialBackoff;
+    this.maxBackoff = Math.max(initialBackoff, maxBackoff);
+    this.backoff = initialBackoff;
+  }
+
+  /**
+   * Checks whether a request may be sent to the host. If the backoff time of
+   * an open circuit has elapsed, the caller becomes the probe and has to
+   * report the result with {@link #onSuccess()}, {@link #onFailure(long, boolean)}
+   * or {@link #onSkipped(long)}.
+   *
+   * @param now The current time
+   * @return whether the request may be sent
+   */
+  synchronized Permit acquire(long now) {
+    switch (state) {
+      case CLOSED:
+        return Permit.GRANTED;
+      case OPEN:
+        if (now >= retryAt) {
+          state = State.HALF_OPEN;
+          return Permit.PROBE;
+        }
+        return Permit.DENIED;
+      default:
+        return Permit.DENIED;
+    }
+  }
+
+  /**
+   * Records a successful request and closes the circuit
+   *
+   * @return <code>true</code>, if the circuit was not closed before
+   */
+  synchronized boolean onSuccess() {
+    boolean recovered = state != State.CLOSED;
+    state = State.CLOSED;
+    failures = 0;
+    backoff = initialBackoff;
+    return recovered;
+  }
+
+  /**
+   * Records a failed request. A failed probe re-opens the circuit with the
+   * doubled backoff time. Failures of other requests, which were sent before
+   * the circuit opened, are ignored while the circuit is not closed.
+   *
+   * @param now   The current time
+   * @param probe <code>true</code>, if the request was sent as probe
+   * @return <code>true</code>, if a closed circuit has been opened by this failure
+   */
+  synchronized boolean onFailure(long now, boolean probe) {
+    if (probe) {
+      if (state == State.HALF_OPEN) {
+        backoff = Math.min(backoff * 2, maxBackoff);
+        open(now);
+      }
+      return false;
+    }
+
+    if (state != State.CLOSED) {
+      return false;
+    }
+    failures++;
+    if (failureThreshold < 1 || failures < failureThreshold) {
+      return false;
+    }
+    open(now);
+    return true;
+  }
+
+  /**
+   * Records that a probe has not been sent, e.g. because the limit of
+   * requests in flight was reached. A probe is allowed again with the next
+   * request.
+   *
+   * @param now The current time
+   */
+  synchronized void onSkipped(long now) {
+    if (state == State.HALF_OPEN) {
+      state = State.OPEN;
+      retryAt = now;
+    }
+  }
+
+  private void open(long now) {
+    state = State.OPEN;
+    retryAt = now + backoff;
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * @return Time in milliseconds until the next probe request, if the circuit is open
+   */
+  synchronized long getBackoff() {
+    return backoff;
+  }
+}
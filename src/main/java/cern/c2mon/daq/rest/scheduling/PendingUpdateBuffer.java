@@ -0,0 +1,235 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+
+/**
+ * Bounded buffer of the values received for tags, which are still being
+ * auto-configured. The values are replayed once the tag has been added to
+ * the equipment.
+ * <p/>
+ * The buffer is limited in total and per tag. If a limit is reached, either
+ * the oldest value is dropped or the new value is rejected, depending on the
+ * {@link OverflowPolicy}. Values, which have not been replayed within the
+ * expiry time, are dropped by {@link #expire(long)}.
+ */
+@Slf4j
+public class PendingUpdateBuffer {
+
+  public enum OverflowPolicy {
+    /** The oldest buffered value is dropped in favour of the new value */
+    DROP_OLDEST,
+    /** The new value is rejected */
+    REJECT
+  }
+
+  /** Reason of dropped values, which is passed to the drop listener */
+  public static final String OVERFLOW = "overflow";
+  public static final String EXPIRED = "expired";
+  public static final String DISCARDED = "discarded";
+
+  private final int capacity;
+
+  private final int capacityPerTag;
+
+  private final long expiry;
+
+  private final OverflowPolicy overflowPolicy;
+
+  /** Called with the reason and number of dropped values */
+  private final ObjIntConsumer<String> dropListener;
+
+  /** The buffered values per tag name, in the order of the first buffered value. Guarded by this. */
+  private final Map<String, Deque<PendingUpdate>> pendingUpdates = new LinkedHashMap<>();
+
+  private int size;
+
+  /**
+   * @param capacity       Maximum number of buffered values
+   * @param capacityPerTag Maximum number of buffered values per tag
+   * @param expiry         Time in milliseconds after which a buffered value is dropped
+   * @param overflowPolicy Defines what happens, if a limit is reached
+   * @param dropListener   Called with the reason and number of dropped values
+   */
+  public PendingUpdateBuffer(int capacity, int capacityPerTag, long expiry, OverflowPolicy overflowPolicy,
+                             ObjIntConsumer<String> dropListener) {
+    this.capacity = capacity;
+    this.capacityPerTag = capacityPerTag;
+    this.expiry = expiry;
+    this.overflowPolicy = overflowPolicy;
+    this.dropListener = dropListener;
+  }
+
+  /**
+   * Buffers a value until the tag has been configured
+   *
+   * @param name        The tag name
+   * @param valueUpdate The received value
+   * @return <code>false</code>, if the value has been rejected because the buffer is full
+   */
+  public boolean add(String name, ValueUpdate valueUpdate) {
+    return add(name, valueUpdate, System.currentTimeMillis());
+  }
+
+  synchronized boolean add(String name, ValueUpdate valueUpdate, long now) {
+    Deque<PendingUpdate> updates = pendingUpdates.get(name);
+
+    if (updates != null && updates.size() >= capacityPerTag) {
+      if (overflowPolicy == OverflowPolicy.REJECT) {
+        drop(OVERFLOW, 1);
+        return false;
+      }
+      updates.pollFirst();
+      size--;
+      drop(OVERFLOW, 1);
+    } else if (size >= capacity) {
+      if (overflowPolicy == OverflowPolicy.REJECT || !dropOldest()) {
+        drop(OVERFLOW, 1);
+        return false;
+      }
+      drop(OVERFLOW, 1);
+    }
+
+    pendingUpdates.computeIfAbsent(name, n -> new ArrayDeque<>()).addLast(new PendingUpdate(valueUpdate, now));
+    size++;
+    return true;
+  }
+
+  /**
+   * Drops the oldest value of the tag, which has been buffered first
+   */
+  private boolean dropOldest() {
+    Iterator<Deque<PendingUpdate>> it = pendingUpdates.values().iterator();
+    if (!it.hasNext()) {
+      return false;
+    }
+    Deque<PendingUpdate> oldest = it.next();
+    oldest.pollFirst();
+    size--;
+    if (oldest.isEmpty()) {
+      it.remove();
+    }
+    return true;
+  }
+
+  /**
+   * Removes the buffered values of the given tag
+   *
+   * @param name The tag name
+   * @return The values, which have not yet expired, in the order of reception
+   */
+  public List<ValueUpdate> drain(String name) {
+    return drain(name, System.currentTimeMillis());
+  }
+
+  synchronized List<ValueUpdate> drain(String name, long now) {
+    Deque<PendingUpdate> updates = pendingUpdates.remove(name);
+    if (updates == null) {
+      return Collections.emptyList();
+    }
+    size -= updates.size();
+
+    List<ValueUpdate> result = new ArrayList<>(updates.size());
+    for (PendingUpdate update : updates) {
+      if (now - update.received < expiry) {
+        result.add(update.valueUpdate);
+      }
+    }
+    if (result.size() < updates.size()) {
+      drop(EXPIRED, updates.size() - result.size());
+    }
+    return result;
+  }
+
+  /**
+   * Drops the buffered values of the given tag, e.g. because its configuration failed
+   *
+   * @param name The tag name
+   * @return The number of dropped values
+   */
+  public synchronized int discard(String name) {
+    Deque<PendingUpdate> updates = pendingUpdates.remove(name);
+    if (updates == null) {
+      return 0;
+    }
+    size -= updates.size();
+    drop(DISCARDED, updates.size());
+    return updates.size();
+  }
+
+  /**
+   * Drops the values, which have been buffered for longer than the expiry time
+   *
+   * @param now The current time in milliseconds
+   * @return The number of dropped values
+   */
+  public synchronized int expire(long now) {
+    int expired = 0;
+    Iterator<Deque<PendingUpdate>> it = pendingUpdates.values().iterator();
+    while (it.hasNext()) {
+      Deque<PendingUpdate> updates = it.next();
+      while (!updates.isEmpty() && now - updates.peekFirst().received >= expiry) {
+        updates.pollFirst();
+        expired++;
+      }
+      if (updates.isEmpty()) {
+        it.remove();
+      }
+    }
+
+    if (expired > 0) {
+      size -= expired;
+      log.debug("Dropped {} buffered values of tags, which have not been configured within {} ms", expired, expiry);
+      drop(EXPIRED, expired);
+    }
+    return expired;
+  }
+
+  /**
+   * @return The number of buffered values
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  private void drop(String reason, int count) {
+    dropListener.accept(reason, count);
+  }
+
+  private static final class PendingUpdate {
+    private final ValueUpdate valueUpdate;
+    private final long received;
+
+    PendingUpdate(ValueUpdate valueUpdate, long received) {
+      this.valueUpdate = valueUpdate;
+      this.received = received;
+    }
+  }
+}
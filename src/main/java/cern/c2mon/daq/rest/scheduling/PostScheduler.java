@@ -16,14 +16,21 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest.scheduling;
 
-import java.util.TimerTask;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.http.HttpStatus;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import cern.c2mon.daq.common.IEquipmentMessageSender;
 import cern.c2mon.daq.rest.address.RestPostAddress;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
 import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
 import cern.c2mon.shared.common.datatag.ValueUpdate;
@@ -31,20 +38,110 @@ import cern.c2mon.shared.common.datatag.util.SourceDataTagQualityCode;
 import cern.c2mon.shared.common.process.IEquipmentConfiguration;
 
 /**
- * Handles the freshness check for the POST tags and takes care of the value sending to the server
+ * Handles the freshness check for the POST tags and takes care of the value sending to the server.
+ * <p/>
+ * Receiving a value only records its timestamp in the {@link FreshnessTracker}. The expired tags
+ * are detected by a periodic check, which is run by the scheduling engine.
+ * <p/>
+ * The tag names are resolved through the {@link TagIndex}, which has to be
+ * kept up to date by the owner of this scheduler.
  * @author Franz Ritter, Matthias Braeger
  */
 @Slf4j
 public class PostScheduler extends RestScheduler {
 
+  private final FreshnessTracker freshnessTracker = new FreshnessTracker(this::sendDataUnavailable);
+
+  /**
+   * Index of the tag names, which is maintained by the RequestDelegator
+   */
+  @Getter
+  private final TagIndex tagIndex;
+
+  /**
+   * Values of tags, which are auto-configured asynchronously
+   */
+  private final PendingUpdateBuffer pendingUpdates;
+
   public PostScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration) {
-    super(sender, configuration);
+    this(sender, configuration, new RestDaqProperties());
+  }
+
+  public PostScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration, RestDaqProperties properties) {
+    this(sender, configuration, properties, RestDaqMetrics.NOOP);
+  }
+
+  public PostScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration, RestDaqProperties properties,
+                       RestDaqMetrics metrics) {
+    super(sender, configuration, properties, metrics);
+    registerGauge("post.tracked", "Number of POST tags, for which the update interval is checked", freshnessTracker, FreshnessTracker::size);
+    this.tagIndex = new TagIndex(properties.getPost().getMaxUnknownNames());
+    long interval = properties.getPost().getFreshnessCheckInterval();
+    engine.scheduleAtFixedRate(freshnessTracker, interval, interval);
+
+    RestDaqProperties.PendingUpdates pendingSettings = properties.getPendingUpdates();
+    this.pendingUpdates = new PendingUpdateBuffer(pendingSettings.getCapacity(), pendingSettings.getCapacityPerTag(),
+        pendingSettings.getExpiry(), pendingSettings.getOverflowPolicy(), metrics::pendingUpdatesDropped);
+    registerGauge("post.pending", "Number of buffered values of tags in auto-configuration", pendingUpdates, PendingUpdateBuffer::size);
+    long expiryCheckInterval = Math.max(interval, pendingSettings.getExpiry() / 10);
+    engine.scheduleAtFixedRate(() -> pendingUpdates.expire(System.currentTimeMillis()), expiryCheckInterval, expiryCheckInterval);
+  }
+
+  /**
+   * Buffers the value of a tag, which is being auto-configured, until the tag
+   * has been added to the equipment
+   *
+   * @param name        The tag name
+   * @param valueUpdate The received value
+   * @return <code>false</code>, if the value has been rejected because the buffer is full
+   */
+  public boolean bufferPendingUpdate(String name, ValueUpdate valueUpdate) {
+    if (!pendingUpdates.add(name, valueUpdate)) {
+      return false;
+    }
+
+    // the tag might have been added meanwhile
+    Long id = tagIndex.getId(name);
+    if (id != null) {
+      replayPendingUpdates(id, name);
+    }
+    return true;
+  }
+
+  /**
+   * Sends the buffered values of a tag, which has just been added to the equipment
+   *
+   * @param id   The tag id
+   * @param name The tag name
+   * @return The number of values sent
+   */
+  public int replayPendingUpdates(Long id, String name) {
+    List<ValueUpdate> valueUpdates = pendingUpdates.drain(name);
+    for (ValueUpdate valueUpdate : valueUpdates) {
+      sendValueToServer(id, valueUpdate);
+    }
+    if (!valueUpdates.isEmpty()) {
+      log.debug("Replayed {} buffered values of tag #{} ({})", valueUpdates.size(), id, name);
+    }
+    return valueUpdates.size();
+  }
+
+  /**
+   * Drops the buffered values of a tag, whose auto-configuration failed
+   *
+   * @param name The tag name
+   */
+  public void discardPendingUpdates(String name) {
+    int discarded = pendingUpdates.discard(name);
+    if (discarded > 0) {
+      log.warn("Dropped {} buffered values of tag {}, since it could not be configured", discarded, name);
+    }
   }
 
   /**
    * If the Controller received successfully a message from a client this
    * method handles all actions which needs to be done in that case. After
-   * receiving a message the ReceiverTask of the id must be restarted.
+   * receiving a message the freshness of the id is renewed.
    * Furthermore value must be cast to the given DataType of the
    * corresponding DataTag.
    * <p/>
@@ -57,26 +154,24 @@ public class PostScheduler extends RestScheduler {
    * @return Status based on the success of the processing of the value.
    */
   public HttpStatus sendValueToServer(Long id, ValueUpdate valueUpdate) {
+    long start = System.nanoTime();
+    try {
+      return forwardValue(id, valueUpdate);
+    } finally {
+      metrics.getSendValueTimer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private HttpStatus forwardValue(Long id, ValueUpdate valueUpdate) {
     // send message if the id is known to the server(and daq)
     if (this.contains(id)) {
-      ISourceDataTag tag = equipmentConfiguration.getSourceDataTag(id);
-      RestPostAddress address = getAddress(id);
-      ReceiverTask newTask = new ReceiverTask(id);
+      // renew the freshness of the tag, only tags with a frequency are tracked
+      freshnessTracker.touch(id);
 
       equipmentMessageSender.update(id, valueUpdate);
 
-      // reset the timer for the tag
-      if (idToTask.get(id).cancel()) {
-        idToTask.put(id, newTask);
-        timer.purge();
-        timer.schedule(newTask, address.getFrequency());
-      }
-      else if (address.getFrequency() != null) {
-        idToTask.put(id, newTask);
-        timer.schedule(newTask, address.getFrequency());
-      }
-
-      if (equipmentConfiguration.getSourceDataTag(id).getCurrentValue().getQuality().getQualityCode() == SourceDataTagQualityCode.UNSUPPORTED_TYPE) {
+      ISourceDataTag tag = equipmentConfiguration.getSourceDataTag(id);
+      if (tag.getCurrentValue().getQuality().getQualityCode() == SourceDataTagQualityCode.UNSUPPORTED_TYPE) {
         log.warn("Value '{}' for tag #{} could not be converted to tag data type {}", valueUpdate, id, tag.getDataType());
         return HttpStatus.BAD_REQUEST;
       }
@@ -92,7 +187,7 @@ public class PostScheduler extends RestScheduler {
   /**
    * If the Controller received successfully a message from a client this
    * method handles all actions which needs to be done in that case. After
-   * receiving a message the ReceiverTask of the id must be restarted.
+   * receiving a message the freshness of the id is renewed.
    * Furthermore value must be cast to the given DataType of the
    * corresponding DataTag.
    * <p/>
@@ -105,53 +200,103 @@ public class PostScheduler extends RestScheduler {
    * @return Status based on the success of the processing of the value.
    */
   public HttpStatus sendValueToServer(String name, ValueUpdate valueUpdate) {
-    try {
-      return sendValueToServer(getIdByName(name), valueUpdate);
-    } catch (Exception e) {
-      log.warn("Unexpected Problem. Received a message with identifier {}", name, e);
+    Long id = findIdByName(name);
+    if (id == null) {
+      log.warn("Received message for tag {} which is unknown.", name);
       return HttpStatus.BAD_REQUEST;
     }
+    return sendValueToServer(id, valueUpdate);
   }
 
   /**
    * Returns the tag id for the given tag name, if it exists
    * @param name tag name
    * @return the tag id
+   * @throws IllegalArgumentException if no tag exists for the given name
    */
   public Long getIdByName(String name) {
-    try {
-      return equipmentConfiguration.getSourceDataTagIdByName(name);
-    } catch (IllegalArgumentException e) {
+    Long id = findIdByName(name);
+    if (id == null) {
       log.warn("Received message for tag {} which is unknown.", name);
-      throw e;
+      throw new IllegalArgumentException("No tag found for name " + name);
     }
+    return id;
   }
 
   /**
-   * Checks, if the DAQ core has a tag configured for the given name
+   * Returns the tag id for the given tag name. Names, which are not yet in the
+   * {@link TagIndex}, are looked up once in the equipment configuration.
+   *
    * @param name tag name
-   * @return <code>true</code>, if tag with the given name is configured
+   * @return the tag id or <code>null</code>, if no tag exists for the given name
    */
-  public boolean tagExist(String name) {
+  public Long findIdByName(String name) {
+    if (name == null) {
+      return null;
+    }
+
+    Long id = tagIndex.getId(name);
+    if (id != null || tagIndex.isUnknown(name)) {
+      return id;
+    }
+
     try {
-      equipmentConfiguration.getSourceDataTagIdByName(name);
-      return true;
+      id = equipmentConfiguration.getSourceDataTagIdByName(name);
+      tagIndex.putName(name, id);
+      return id;
     } catch (IllegalArgumentException e) {
       log.trace("No tag found for name: {}", name);
-      return false;
+      tagIndex.markUnknown(name);
+      return null;
+    }
+  }
+
+  /**
+   * Resolves the tag ids for the given tag names in one pass. Names of unknown
+   * tags are not contained in the result.
+   *
+   * @param names tag names
+   * @return map of the known tag names with their tag ids
+   */
+  public Map<String, Long> getIdsByName(Collection<String> names) {
+    Map<String, Long> ids = new HashMap<>(names.size());
+    for (String name : names) {
+      Long id = findIdByName(name);
+      if (id != null) {
+        ids.put(name, id);
+      }
     }
+    return ids;
+  }
+
+  /**
+   * Checks, if the DAQ core has a tag configured for the given name
+   * @param name tag name
+   * @return <code>true</code>, if tag with the given name is configured
+   */
+  public boolean tagExist(String name) {
+    return findIdByName(name) != null;
   }
 
   @Override
   public void addTask(Long id) {
-    RestPostAddress address = getAddress(id);
-    ReceiverTask task = new ReceiverTask(id);
+    addTask(id, getAddress(id));
+  }
+
+  @Override
+  public void addTasks(Collection<? extends ISourceDataTag> dataTags) {
+    for (ISourceDataTag dataTag : dataTags) {
+      addTask(dataTag.getId(), (RestPostAddress) dataTag.getHardwareAddress());
+    }
+  }
 
-    idToTask.put(id, task);
+  private void addTask(Long id, RestPostAddress address) {
+    // only track the freshness of the tag if the frequency ist set.
+    ScheduledTask task = address.getFrequency() != null ? freshnessTracker.track(id, address.getFrequency()) : ScheduledTask.NONE;
 
-    // only add the task to the timer if the frequency ist set.
-    if (address.getFrequency() != null) {
-      timer.schedule(task, address.getFrequency());
+    ScheduledTask previous = idToTask.put(id, task);
+    if (previous != null && previous != task) {
+      previous.cancel();
     }
   }
 
@@ -169,28 +314,15 @@ public class PostScheduler extends RestScheduler {
   }
 
   /**
-   * A instance of the SendRequestTask holds all information for sending a invalid message to the equipment.
+   * This method is called once the interval of the tag expired. If the
+   * interval expire the client did not send a post message with the given
+   * id to the REST daq. Because of that the daq thinks that the data is
+   * invalid and an invalid message is end to the server.
    */
-  class ReceiverTask extends TimerTask {
-
-    private Long id;
-
-    ReceiverTask(Long id) {
-      this.id = id;
-    }
-
-    /**
-     * This method is called after the interval of this task expires. If the
-     * interval expire the client did not send a post message with the given
-     * id to the REST daq. Because of that the daq thinks that the data is
-     * invalid and an invalid message is end to the server.
-     */
-    @Override
-    public void run() {
-      // sending the reply to the server
-      SourceDataTagQuality tagQuality = new SourceDataTagQuality(SourceDataTagQualityCode.DATA_UNAVAILABLE);
-      tagQuality.setDescription("No value received in the given time interval of the DataTag-" + id);
-      equipmentMessageSender.update(id, tagQuality);
-    }
+  private void sendDataUnavailable(long id) {
+    metrics.freshnessExpired();
+    SourceDataTagQuality tagQuality = new SourceDataTagQuality(SourceDataTagQualityCode.DATA_UNAVAILABLE);
+    tagQuality.setDescription("No value received in the given time interval of the DataTag-" + id);
+    equipmentMessageSender.update(id, tagQuality);
   }
 }
@@ -0,0 +1,137 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the sent requests in time slots of fixed length and calculates the
+ * peak-to-mean ratio of the request rate over a sliding window. A ratio of 1
+ * means that the requests are evenly distributed, whereas a high ratio
+ * indicates bursts of requests within a short time.
+ */
+class RequestRateMonitor {
+
+  /** Number of the lower bits of a slot, which hold the count of requests */
+  private static final int COUNT_BITS = 24;
+
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+  private final long slotDuration;
+
+  private final int slots;
+
+  /**
+   * Per slot the number of the time slot (relative to the first slot, plus
+   * one) in the upper bits and the count of requests in the lower bits, so
+   * that a slot is reused and counted with a single compare-and-set. 0 marks
+   * an unused slot.
+   */
+  private final AtomicLongArray slotCounts;
+
+  /** Time slot of the creation. Earlier slots are not part of the window. */
+  private final long firstSlot;
+
+  /**
+   * @param slotDuration Duration of a time slot in milliseconds
+   * @param slots        Number of time slots of the sliding window
+   */
+  RequestRateMonitor(long slotDuration, int slots) {
+    this(slotDuration, slots, System.currentTimeMillis());
+  }
+
+  RequestRateMonitor(long slotDuration, int slots, long now) {
+    this.slotDuration = slotDuration;
+    this.slots = slots;
+    this.slotCounts = new AtomicLongArray(slots);
+    this.firstSlot = now / slotDuration;
+  }
+
+  /**
+   * Counts a request
+   *
+   * @param now The current time in milliseconds
+   */
+  void record(long now) {
+    long slot = now / slotDuration - firstSlot;
+    if (slot < 0) {
+      return;
+    }
+    int index = (int) (slot % slots);
+    long tag = tag(slot);
+
+    while (true) {
+      long current = slotCounts.get(index);
+      long currentTag = current & ~COUNT_MASK;
+      long next;
+      if (currentTag == tag) {
+        if ((current & COUNT_MASK) == COUNT_MASK) {
+          return;
+        }
+        next = current + 1;
+      } else if (currentTag > tag) {
+        // the slot has already been reused for a later time slot
+        return;
+      } else {
+        // the slot is reused for a new time slot
+        next = tag | 1;
+      }
+      if (slotCounts.compareAndSet(index, current, next)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Calculates the peak-to-mean ratio of the requests per time slot over the
+   * completed slots of the window. The current slot is skipped, since it is
+   * still filled.
+   *
+   * @param now The current time in milliseconds
+   * @return the peak-to-mean ratio, or <code>NaN</code> if no request has been sent within the window
+   */
+  double peakToMean(long now) {
+    long currentSlot = now / slotDuration - firstSlot;
+    long total = 0;
+    long peak = 0;
+    int slotCount = 0;
+
+    for (long slot = Math.max(currentSlot - slots + 1, 0); slot < currentSlot; slot++) {
+      slotCount++;
+      long value = slotCounts.get((int) (slot % slots));
+      if ((value & ~COUNT_MASK) == tag(slot)) {
+        long count = value & COUNT_MASK;
+        total += count;
+        peak = Math.max(peak, count);
+      }
+    }
+
+    if (total == 0) {
+      return Double.NaN;
+    }
+    double mean = (double) total / slotCount;
+    return peak / mean;
+  }
+
+  private static long tag(long slot) {
+    return (slot + 1) << COUNT_BITS;
+  }
+
+  double peakToMean() {
+    return peakToMean(System.currentTimeMillis());
+  }
+}
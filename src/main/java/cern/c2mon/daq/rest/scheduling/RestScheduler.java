@@ -16,13 +16,19 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest.scheduling;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
 
 import cern.c2mon.daq.common.EquipmentMessageHandler;
 import cern.c2mon.daq.common.IEquipmentMessageSender;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
 import cern.c2mon.shared.common.process.IEquipmentConfiguration;
 
 /**
@@ -38,14 +44,15 @@ import cern.c2mon.shared.common.process.IEquipmentConfiguration;
 public abstract class RestScheduler {
 
   /**
-   * This map saves a TimerTask for each DataTag based on the tag id.
+   * This registry saves the handle of the scheduled task for each DataTag based on the tag id.
+   * It is accessed concurrently by the request threads, the scheduling engine and the configuration callbacks.
    */
-  protected Map<Long, TimerTask> idToTask;
+  protected final TaskRegistry idToTask = new TaskRegistry();
 
   /**
-   * The Timer class which handles the frequency scheduling.
+   * The engine which handles the frequency scheduling.
    */
-  protected Timer timer;
+  protected SchedulingEngine engine;
 
   /**
    * The messageSender of the given {@link EquipmentMessageHandler} which provieds the functionality to
@@ -58,11 +65,38 @@ public abstract class RestScheduler {
    */
   protected IEquipmentConfiguration equipmentConfiguration;
 
+  /**
+   * The meters of the REST DAQ
+   */
+  protected final RestDaqMetrics metrics;
+
+  /**
+   * The gauges registered by this scheduler, which are removed at shutdown
+   */
+  private final List<Meter> gauges = new CopyOnWriteArrayList<>();
+
   protected RestScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration) {
+    this(sender, configuration, new RestDaqProperties());
+  }
+
+  protected RestScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration, RestDaqProperties properties) {
+    this(sender, configuration, properties, RestDaqMetrics.NOOP);
+  }
+
+  protected RestScheduler(IEquipmentMessageSender sender, IEquipmentConfiguration configuration, RestDaqProperties properties,
+                          RestDaqMetrics metrics) {
     this.equipmentMessageSender = sender;
     this.equipmentConfiguration = configuration;
-    this.timer = new Timer();
-    this.idToTask = new HashMap<>();
+    this.metrics = metrics;
+    this.engine = SchedulingEngine.create(properties.getScheduler(), getClass().getSimpleName());
+    registerGauge("scheduler.tasks", "Number of tasks in the queue of the scheduling engine", engine, SchedulingEngine::size);
+  }
+
+  /**
+   * Registers a gauge tagged with the name of this scheduler, which is removed at shutdown
+   */
+  protected <T> void registerGauge(String name, String description, T object, ToDoubleFunction<T> valueFunction) {
+    gauges.add(metrics.gauge(name, description, Tags.of("scheduler", getClass().getSimpleName()), object, valueFunction));
   }
 
   /**
@@ -72,6 +106,18 @@ public abstract class RestScheduler {
    */
   public abstract void addTask(Long id);
 
+  /**
+   * Adds several DataTags to the scheduler. The hardware address of the
+   * DataTags has to be initialized already.
+   *
+   * @param dataTags The DataTags to add
+   */
+  public void addTasks(Collection<? extends ISourceDataTag> dataTags) {
+    for (ISourceDataTag dataTag : dataTags) {
+      addTask(dataTag.getId());
+    }
+  }
+
   /**
    * Sendening a refreshing request of the DataTag corresponding to the id to the scheduler.
    *
@@ -86,12 +132,9 @@ public abstract class RestScheduler {
    * @param id The id of the corresponding DataTag.
    */
   public void removeTask(Long id) {
-    if (idToTask.containsKey(id)) {
-
-      idToTask.get(id).cancel();
-      idToTask.remove(id);
-      timer.purge();
-
+    ScheduledTask task = idToTask.remove(id);
+    if (task != null) {
+      task.cancel();
     }
     else {
       throw new IllegalArgumentException("Cant remove DataTag:" + id + ". Tag unknown to the Equipment.");
@@ -106,7 +149,16 @@ public abstract class RestScheduler {
    * @return
    */
   public boolean contains(Long id) {
-    return idToTask.containsKey(id);
+    return idToTask.contains(id);
+  }
+
+  /**
+   * Stops the scheduling engine. Afterwards no more tasks can be added to this scheduler.
+   */
+  public void shutdown() {
+    engine.shutdown();
+    gauges.forEach(metrics::remove);
+    gauges.clear();
   }
 
 }
@@ -0,0 +1,39 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+/**
+ * Handle of a task which has been submitted to a {@link SchedulingEngine}.
+ * It allows the scheduler to cancel the task without knowing about the
+ * engine implementation behind it.
+ */
+public interface ScheduledTask {
+
+  /**
+   * Handle for tasks which are registered, but never scheduled
+   * (e.g. POST tags without post frequency).
+   */
+  ScheduledTask NONE = () -> false;
+
+  /**
+   * Cancels the task. A cancelled task will never be executed again.
+   *
+   * @return <code>true</code>, if this call prevented at least one
+   *         scheduled execution of the task.
+   */
+  boolean cancel();
+}
@@ -0,0 +1,85 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+
+/**
+ * A scheduling engine executes delayed and periodic tasks on behalf of a
+ * {@link RestScheduler}. The implementation can be selected through the
+ * {@link RestDaqProperties} with <code>c2mon.daq.rest.scheduler.engine</code>.
+ */
+public interface SchedulingEngine {
+
+  /**
+   * Schedules the given task for a single execution after the given delay.
+   *
+   * @param task  The task to execute
+   * @param delay delay in milliseconds before the task is executed
+   * @return handle to cancel the task
+   */
+  ScheduledTask schedule(Runnable task, long delay);
+
+  /**
+   * Schedules the given task for repeated fixed-rate execution. Executions
+   * which are missed, e.g. because a previous run took too long, are skipped
+   * rather than caught up.
+   *
+   * @param task         The task to execute
+   * @param initialDelay delay in milliseconds before the first execution
+   * @param period       time in milliseconds between successive executions
+   * @return handle to cancel the task
+   */
+  ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period);
+
+  /**
+   * @return The number of tasks which are currently waiting for execution
+   */
+  int size();
+
+  /**
+   * Stops the engine. Pending tasks are discarded.
+   */
+  void shutdown();
+
+  /**
+   * Creates a new scheduling engine as configured in the given properties
+   *
+   * @param properties The scheduler properties of the REST DAQ
+   * @param name Name of the engine, used for naming the worker thread
+   * @return a new scheduling engine instance
+   */
+  static SchedulingEngine create(RestDaqProperties.Scheduler properties, String name) {
+    switch (properties.getEngine()) {
+      case TIMER:
+        return new TimerSchedulingEngine(name);
+      case HASHED_WHEEL:
+      default:
+        return new HashedWheelSchedulingEngine(name, properties.getTickDuration(), properties.getTicksPerWheel());
+    }
+  }
+
+  /**
+   * The available scheduling engine implementations
+   */
+  enum Type {
+    /** Legacy engine based on a single {@link java.util.Timer} */
+    TIMER,
+    /** Hashed timing wheel with O(1) insert and cancel */
+    HASHED_WHEEL
+  }
+}
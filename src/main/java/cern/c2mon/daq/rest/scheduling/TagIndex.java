@@ -0,0 +1,137 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.address.HardwareAddress;
+
+/**
+ * Concurrent index of the tags known to the REST DAQ, which avoids the
+ * exception-driven name lookups of the equipment configuration on every
+ * received message. It is maintained incrementally whenever a tag is added,
+ * updated or removed.
+ * <p/>
+ * Names, which are not known to the equipment, are kept in a bounded negative
+ * cache. It is reset as soon as it reaches its maximum size.
+ */
+@Slf4j
+public class TagIndex {
+
+  private final Map<String, Long> nameToId = new ConcurrentHashMap<>();
+
+  private final Map<Long, String> idToName = new ConcurrentHashMap<>();
+
+  private final Map<Long, HardwareAddress> idToAddress = new ConcurrentHashMap<>();
+
+  private final Set<String> unknownNames = ConcurrentHashMap.newKeySet();
+
+  private final int maxUnknownNames;
+
+  public TagIndex(int maxUnknownNames) {
+    this.maxUnknownNames = maxUnknownNames;
+  }
+
+  /**
+   * Adds the tag to the index or replaces a previous entry of the same tag id
+   *
+   * @param tag The tag with its hardware address already initialized
+   */
+  public void put(ISourceDataTag tag) {
+    putName(tag.getName(), tag.getId());
+    if (tag.getHardwareAddress() != null) {
+      idToAddress.put(tag.getId(), tag.getHardwareAddress());
+    }
+  }
+
+  /**
+   * Adds the name of a tag to the index
+   *
+   * @param name The tag name
+   * @param id   The tag id
+   */
+  public void putName(String name, Long id) {
+    String previousName = idToName.put(id, name);
+    if (previousName != null && !previousName.equals(name)) {
+      nameToId.remove(previousName, id);
+    }
+    nameToId.put(name, id);
+    unknownNames.remove(name);
+  }
+
+  /**
+   * Removes the tag from the index
+   *
+   * @param id The tag id
+   */
+  public void remove(Long id) {
+    String name = idToName.remove(id);
+    if (name != null) {
+      nameToId.remove(name, id);
+    }
+    idToAddress.remove(id);
+  }
+
+  /**
+   * @param name The tag name
+   * @return The tag id or <code>null</code>, if the name is not indexed
+   */
+  public Long getId(String name) {
+    return nameToId.get(name);
+  }
+
+  /**
+   * @param id The tag id
+   * @return The hardware address of the tag or <code>null</code>, if the tag is not indexed
+   */
+  public HardwareAddress getAddress(Long id) {
+    return idToAddress.get(id);
+  }
+
+  /**
+   * @param name The tag name
+   * @return <code>true</code>, if the name has been marked as unknown to the equipment
+   */
+  public boolean isUnknown(String name) {
+    return unknownNames.contains(name);
+  }
+
+  /**
+   * Remembers that no tag exists for the given name
+   *
+   * @param name The tag name
+   */
+  public void markUnknown(String name) {
+    if (unknownNames.size() >= maxUnknownNames) {
+      log.debug("Negative cache reached its maximum size of {} names and is reset", maxUnknownNames);
+      unknownNames.clear();
+    }
+    unknownNames.add(name);
+  }
+
+  /**
+   * @return The number of indexed tags
+   */
+  public int size() {
+    return idToName.size();
+  }
+}
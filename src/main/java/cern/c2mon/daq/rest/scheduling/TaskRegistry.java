@@ -0,0 +1,224 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+/**
+ * Thread-safe registry of the {@link ScheduledTask} handles, keyed by the
+ * primitive tag id. The ids are spread over a fixed number of stripes, each
+ * of them being an open-addressing hash table guarded by its own lock. This
+ * allows the request threads, the scheduling engine and the configuration
+ * callbacks to access the registry concurrently without boxing the ids.
+ */
+public class TaskRegistry {
+
+  private static final int DEFAULT_STRIPES = 16;
+
+  private final Stripe[] stripes;
+
+  private final int stripeMask;
+
+  public TaskRegistry() {
+    this(DEFAULT_STRIPES);
+  }
+
+  /**
+   * @param concurrencyLevel The expected number of concurrently updating threads. It is rounded up to a power of two.
+   */
+  public TaskRegistry(int concurrencyLevel) {
+    int count = 1;
+    while (count < concurrencyLevel) {
+      count <<= 1;
+    }
+    stripes = new Stripe[count];
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new Stripe();
+    }
+    stripeMask = count - 1;
+  }
+
+  /**
+   * Registers the task for the given id
+   *
+   * @param id   The tag id
+   * @param task The handle of the scheduled task
+   * @return The previous handle of the id or <code>null</code>
+   */
+  public ScheduledTask put(long id, ScheduledTask task) {
+    if (task == null) {
+      throw new NullPointerException("Task must not be null");
+    }
+    int hash = hash(id);
+    Stripe stripe = stripes[hash & stripeMask];
+    synchronized (stripe) {
+      return stripe.put(id, hash, task);
+    }
+  }
+
+  /**
+   * @param id The tag id
+   * @return The handle registered for the given id or <code>null</code>
+   */
+  public ScheduledTask get(long id) {
+    int hash = hash(id);
+    Stripe stripe = stripes[hash & stripeMask];
+    synchronized (stripe) {
+      return stripe.get(id, hash);
+    }
+  }
+
+  /**
+   * Unregisters the task of the given id. The task is not cancelled.
+   *
+   * @param id The tag id
+   * @return The removed handle or <code>null</code>, if the id was not registered
+   */
+  public ScheduledTask remove(long id) {
+    int hash = hash(id);
+    Stripe stripe = stripes[hash & stripeMask];
+    synchronized (stripe) {
+      return stripe.remove(id, hash);
+    }
+  }
+
+  /**
+   * @param id The tag id
+   * @return <code>true</code>, if a task is registered for the given id
+   */
+  public boolean contains(long id) {
+    return get(id) != null;
+  }
+
+  /**
+   * @return The number of registered tasks
+   */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size;
+      }
+    }
+    return size;
+  }
+
+  private static int hash(long id) {
+    long h = id * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * Open-addressing hash table with linear probing. The high bits of the
+   * hash are used for the slot, since the low bits select the stripe.
+   */
+  private static final class Stripe {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    /** A <code>null</code> value marks a free slot */
+    private ScheduledTask[] values = new ScheduledTask[INITIAL_CAPACITY];
+
+    private int size;
+
+    private int slot(int hash, int mask) {
+      return (hash >>> 16 ^ hash >>> 8) & mask;
+    }
+
+    ScheduledTask get(long id, int hash) {
+      int mask = keys.length - 1;
+      for (int i = slot(hash, mask); values[i] != null; i = (i + 1) & mask) {
+        if (keys[i] == id) {
+          return values[i];
+        }
+      }
+      return null;
+    }
+
+    ScheduledTask put(long id, int hash, ScheduledTask task) {
+      int mask = keys.length - 1;
+      int i = slot(hash, mask);
+      for (; values[i] != null; i = (i + 1) & mask) {
+        if (keys[i] == id) {
+          ScheduledTask previous = values[i];
+          values[i] = task;
+          return previous;
+        }
+      }
+      keys[i] = id;
+      values[i] = task;
+      if (++size * 2 > keys.length) {
+        resize(keys.length << 1);
+      }
+      return null;
+    }
+
+    ScheduledTask remove(long id, int hash) {
+      int mask = keys.length - 1;
+      int i = slot(hash, mask);
+      for (; values[i] != null; i = (i + 1) & mask) {
+        if (keys[i] == id) {
+          ScheduledTask previous = values[i];
+          deleteSlot(i, mask);
+          size--;
+          return previous;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Frees the given slot and shifts the following entries of the probe
+     * sequence back, so that no tombstones are needed.
+     */
+    private void deleteSlot(int free, int mask) {
+      int i = free;
+      while (true) {
+        i = (i + 1) & mask;
+        if (values[i] == null) {
+          break;
+        }
+        int home = slot(hash(keys[i]), mask);
+        // move the entry, if its home slot is not within (free, i]
+        if (free <= i ? (home <= free || home > i) : (home <= free && home > i)) {
+          keys[free] = keys[i];
+          values[free] = values[i];
+          free = i;
+        }
+      }
+      values[free] = null;
+    }
+
+    private void resize(int capacity) {
+      long[] oldKeys = keys;
+      ScheduledTask[] oldValues = values;
+      keys = new long[capacity];
+      values = new ScheduledTask[capacity];
+      int mask = capacity - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldValues[j] != null) {
+          int i = slot(hash(oldKeys[j]), mask);
+          while (values[i] != null) {
+            i = (i + 1) & mask;
+          }
+          keys[i] = oldKeys[j];
+          values[i] = oldValues[j];
+        }
+      }
+    }
+  }
+}
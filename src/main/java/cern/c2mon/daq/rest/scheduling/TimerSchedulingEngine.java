@@ -0,0 +1,100 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scheduling engine based on a single {@link Timer}. This is the legacy
+ * behaviour of the REST DAQ. Every cancellation is followed by a purge of
+ * the timer queue, which is O(n) in the number of scheduled tasks.
+ */
+@Slf4j
+public class TimerSchedulingEngine implements SchedulingEngine {
+
+  private final Timer timer;
+
+  private final AtomicInteger pendingTasks = new AtomicInteger();
+
+  public TimerSchedulingEngine(String name) {
+    this.timer = new Timer(name);
+  }
+
+  @Override
+  public ScheduledTask schedule(Runnable task, long delay) {
+    TimerTaskAdapter timerTask = new TimerTaskAdapter(task, false);
+    pendingTasks.incrementAndGet();
+    timer.schedule(timerTask, delay);
+    return timerTask;
+  }
+
+  @Override
+  public ScheduledTask scheduleAtFixedRate(Runnable task, long initialDelay, long period) {
+    TimerTaskAdapter timerTask = new TimerTaskAdapter(task, true);
+    pendingTasks.incrementAndGet();
+    timer.scheduleAtFixedRate(timerTask, initialDelay, period);
+    return timerTask;
+  }
+
+  @Override
+  public int size() {
+    return pendingTasks.get();
+  }
+
+  @Override
+  public void shutdown() {
+    timer.cancel();
+  }
+
+  private final class TimerTaskAdapter extends TimerTask implements ScheduledTask {
+
+    private final Runnable task;
+
+    private final boolean periodic;
+
+    TimerTaskAdapter(Runnable task, boolean periodic) {
+      this.task = task;
+      this.periodic = periodic;
+    }
+
+    @Override
+    public void run() {
+      if (!periodic) {
+        pendingTasks.decrementAndGet();
+      }
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        log.warn("Unexpected problem while executing scheduled task", e);
+      }
+    }
+
+    @Override
+    public boolean cancel() {
+      boolean cancelled = super.cancel();
+      if (cancelled) {
+        pendingTasks.decrementAndGet();
+        timer.purge();
+      }
+      return cancelled;
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.webaccess;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.daq.rest.config.VirtualThreads;
+
+/**
+ * Asynchronous counterpart of the {@link RESTConnector}. The blocking requests
+ * are executed on a dedicated worker pool, so that the caller (usually the
+ * scheduling engine) is never blocked by a slow endpoint.
+ * <p/>
+ * The number of requests in flight is bounded globally and per host. A request
+ * which exceeds one of the two limits is not queued, but rejected right away
+ * with a {@link RejectedExecutionException}. For periodic polling this means
+ * that the poll is skipped and retried at the next period.
+ * <p/>
+ * Optionally every request runs on its own virtual thread instead of the
+ * worker pool, so that thousands of slow endpoints can be polled at the same
+ * time with the simple blocking {@link RESTConnector}.
+ */
+@Slf4j
+public class AsyncRESTConnector {
+
+  private final ExecutorService executor;
+
+  private final AtomicInteger activeRequests = new AtomicInteger();
+
+  private final Semaphore requestPermits;
+
+  private final int maxConcurrentRequestsPerHost;
+
+  private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+  /**
+   * @param maxConcurrentRequests        Maximum number of requests in flight
+   * @param maxConcurrentRequestsPerHost Maximum number of requests in flight to the same host
+   */
+  public AsyncRESTConnector(int maxConcurrentRequests, int maxConcurrentRequestsPerHost) {
+    this(maxConcurrentRequests, maxConcurrentRequestsPerHost, false);
+  }
+
+  /**
+   * @param maxConcurrentRequests        Maximum number of requests in flight
+   * @param maxConcurrentRequestsPerHost Maximum number of requests in flight to the same host
+   * @param virtualThreads               Runs every request on its own virtual thread, if supported by the Java runtime
+   */
+  public AsyncRESTConnector(int maxConcurrentRequests, int maxConcurrentRequestsPerHost, boolean virtualThreads) {
+    if (maxConcurrentRequests <= 0 || maxConcurrentRequestsPerHost <= 0) {
+      throw new IllegalArgumentException("The maximum number of concurrent requests must be greater than 0");
+    }
+    this.requestPermits = new Semaphore(maxConcurrentRequests);
+    this.maxConcurrentRequestsPerHost = maxConcurrentRequestsPerHost;
+
+    if (virtualThreads && VirtualThreads.isSupported()) {
+      this.executor = VirtualThreads.newVirtualThreadPerTaskExecutor("rest-get-virtual-");
+      log.debug("GET requests are sent on virtual threads");
+    } else {
+      if (virtualThreads) {
+        log.warn("c2mon.daq.rest.virtualThreads is enabled, but Java {} does not support virtual threads. GET requests are sent by a pool of {} threads.",
+            System.getProperty("java.version"), maxConcurrentRequests);
+      }
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, 60L, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), new WorkerThreadFactory());
+      pool.allowCoreThreadTimeOut(true);
+      this.executor = pool;
+    }
+  }
+
+  /**
+   * Sends asynchronously a GET request to the given URL.
+   *
+   * @param url the Url of the web service with a REST functionality
+   * @return future which completes with the answer from the server, or exceptionally
+   *         with a {@link RejectedExecutionException} if too many requests are in flight.
+   * @see RESTConnector#sendAndReceiveRequest(String)
+   */
+  public CompletableFuture<String> sendAndReceiveRequest(String url) {
+    return submit(url, () -> RESTConnector.sendAndReceiveRequest(url));
+  }
+
+  /**
+   * Sends asynchronously a conditional GET request to the given URL.
+   *
+   * @param url      the Url of the web service with a REST functionality
+   * @param previous the previous response of the same poller or <code>null</code>
+   * @return future which completes with the answer from the server, or exceptionally
+   *         with a {@link RejectedExecutionException} if too many requests are in flight.
+   * @see RESTConnector#sendConditionalRequest(String, RestResponse)
+   */
+  public CompletableFuture<RestResponse> sendConditionalRequest(String url, RestResponse previous) {
+    return submit(url, () -> RESTConnector.sendConditionalRequest(url, previous));
+  }
+
+  private <T> CompletableFuture<T> submit(String url, Supplier<T> request) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+
+    if (!requestPermits.tryAcquire()) {
+      result.completeExceptionally(new RejectedExecutionException("Maximum number of concurrent requests reached"));
+      return result;
+    }
+
+    String host = getHost(url);
+    Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(maxConcurrentRequestsPerHost));
+    if (!permits.tryAcquire()) {
+      requestPermits.release();
+      result.completeExceptionally(new RejectedExecutionException("Maximum number of concurrent requests to host " + host + " reached"));
+      return result;
+    }
+
+    try {
+      executor.execute(() -> {
+        activeRequests.incrementAndGet();
+        try {
+          result.complete(request.get());
+        } catch (Throwable e) {
+          result.completeExceptionally(e);
+        } finally {
+          activeRequests.decrementAndGet();
+          permits.release();
+          requestPermits.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      permits.release();
+      requestPermits.release();
+      result.completeExceptionally(e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Drops the per-host limit of a host, which is not polled anymore. Requests
+   * which are still in flight release their permits to the dropped limit.
+   *
+   * @param host host and port as returned by {@link #getHost(String)}
+   */
+  public void removeHost(String host) {
+    hostPermits.remove(host);
+  }
+
+  /**
+   * @return The number of requests which are currently in flight
+   */
+  public int getActiveRequests() {
+    return activeRequests.get();
+  }
+
+  /**
+   * Stops the worker pool. Requests in flight are interrupted.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return host and port of the given URL, which is used as key for the per-host limit
+   */
+  public static String getHost(String url) {
+    try {
+      String authority = URI.create(url).getAuthority();
+      return authority != null ? authority : url;
+    } catch (IllegalArgumentException e) {
+      log.trace("Cannot extract host from url {}", url);
+      return url;
+    }
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "rest-get-worker-" + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
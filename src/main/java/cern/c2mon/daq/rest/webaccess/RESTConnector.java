@@ -16,22 +16,129 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest.webaccess;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import lombok.extern.slf4j.Slf4j;
+
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+
 /**
  * This class is responsible to make RESTful requests to web sites.
  * All logic of sending request as well transforming the answers to
  * a specific format is provided by this class.
+ * <p/>
+ * The requests are sent through a pool of keep-alive connections, which
+ * can be tuned with the <code>c2mon.daq.rest.http.*</code> properties.
  *
  * @author Franz Ritter
  */
+@Slf4j
 public final class RESTConnector {
 
   private RESTConnector() {}
 
-  private static RestTemplate restTemplate = new RestTemplate();
+  private static final HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
+
+  private static RestTemplate restTemplate = new RestTemplate(requestFactory);
+
+  private static RestDaqProperties.Http httpProperties;
+
+  private static PoolingHttpClientConnectionManager connectionManager;
+
+  static {
+    configure(new RestDaqProperties.Http());
+  }
+
+  /**
+   * (Re-)creates the connection pool with the given settings. Connections of
+   * a previous pool are closed.
+   *
+   * @param properties The HTTP client settings
+   * @return <code>false</code>, if the pool already uses the given settings and has not been re-created
+   */
+  public static synchronized boolean configure(RestDaqProperties.Http properties) {
+    if (properties.equals(httpProperties)) {
+      return false;
+    }
+
+    PoolingHttpClientConnectionManager newConnectionManager = new PoolingHttpClientConnectionManager();
+    newConnectionManager.setMaxTotal(properties.getMaxConnections());
+    newConnectionManager.setDefaultMaxPerRoute(properties.getMaxConnectionsPerRoute());
+    newConnectionManager.setValidateAfterInactivity(properties.getValidateAfterInactivity());
+
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(properties.getConnectTimeout())
+        .setSocketTimeout(properties.getReadTimeout())
+        .setConnectionRequestTimeout(properties.getConnectionRequestTimeout())
+        .build();
+
+    CloseableHttpClient newHttpClient = HttpClients.custom()
+        .setConnectionManager(newConnectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(keepAliveStrategy(properties.getKeepAlive()))
+        .evictExpiredConnections()
+        .evictIdleConnections(properties.getIdleTimeout(), TimeUnit.MILLISECONDS)
+        .build();
+
+    // the replaced client is either the previous pool or the default client of the request factory
+    HttpClient oldHttpClient = requestFactory.getHttpClient();
+    requestFactory.setHttpClient(newHttpClient);
+    connectionManager = newConnectionManager;
+    httpProperties = properties;
+
+    if (oldHttpClient instanceof Closeable) {
+      try {
+        ((Closeable) oldHttpClient).close();
+      } catch (IOException e) {
+        log.warn("Problem occurred while closing previous HTTP client: {}", e.getMessage());
+      }
+    }
+    log.debug("HTTP connection pool configured: {}", properties);
+    return true;
+  }
+
+  /**
+   * Uses the keep-alive duration announced by the server, and the configured
+   * default if the server does not announce one.
+   */
+  private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAlive) {
+    return (response, context) -> {
+      HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+      while (it.hasNext()) {
+        HeaderElement element = it.nextElement();
+        if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+          try {
+            return Long.parseLong(element.getValue()) * 1000;
+          } catch (NumberFormatException e) {
+            log.trace("Invalid keep-alive timeout: {}", element.getValue());
+          }
+        }
+      }
+      return defaultKeepAlive;
+    };
+  }
 
   /**
    * Send a request to the given URL and receives a answer.
@@ -51,8 +158,48 @@ public final class RESTConnector {
     }
   }
 
+  /**
+   * Sends a conditional GET request to the given URL. The validators of the
+   * previous response are sent as <code>If-None-Match</code> and
+   * <code>If-Modified-Since</code> headers, so that the server can answer
+   * with 304 (Not Modified) instead of the full body.
+   *
+   * @param url      the Url of the web service with a REST functionality
+   * @param previous the previous response of the same URL or <code>null</code>
+   * @return the answer from the server. In case of 304 it is the previous response flagged as not modified.
+   */
+  public static RestResponse sendConditionalRequest(String url, RestResponse previous) {
+    HttpHeaders headers = new HttpHeaders();
+    if (previous != null) {
+      if (previous.getETag() != null) {
+        headers.setIfNoneMatch(previous.getETag());
+      }
+      if (previous.getLastModified() >= 0) {
+        headers.setIfModifiedSince(previous.getLastModified());
+      }
+    }
+
+    ResponseEntity<String> entity = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    if (entity.getStatusCode() == HttpStatus.NOT_MODIFIED && previous != null) {
+      return previous.asNotModified();
+    }
+    if (entity.hasBody() && entity.getStatusCode().is2xxSuccessful()) {
+      return new RestResponse(entity.getBody(), entity.getHeaders().getETag(), entity.getHeaders().getLastModified(), false);
+    } else {
+      throw new RestClientException("url: " + url + " causes problems. Body is not available or request is not " +
+          "successful.");
+    }
+  }
+
   public static RestTemplate getRestTemplate() {
     return restTemplate;
   }
 
+  /**
+   * @return The statistics of the HTTP connection pool (leased, pending, available and max connections)
+   */
+  public static PoolStats getPoolStats() {
+    return connectionManager.getTotalStats();
+  }
+
 }
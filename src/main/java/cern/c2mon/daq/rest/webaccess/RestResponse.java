@@ -0,0 +1,54 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.webaccess;
+
+import lombok.Value;
+
+/**
+ * Answer of a conditional GET request. Besides the body it holds the cache
+ * validators of the resource, which are sent with the next request of the
+ * same poller.
+ */
+@Value
+public class RestResponse {
+
+  /** The answer from the web service. In case of a not modified resource it is the body of the previous response. */
+  String body;
+
+  /** The ETag of the resource or <code>null</code> */
+  String eTag;
+
+  /** The Last-Modified date in milliseconds or <code>-1</code> */
+  long lastModified;
+
+  /** <code>true</code>, if the server answered with 304 (Not Modified) */
+  boolean notModified;
+
+  /**
+   * @return <code>true</code>, if the server has provided an ETag or a Last-Modified date
+   */
+  public boolean hasValidators() {
+    return eTag != null || lastModified >= 0;
+  }
+
+  /**
+   * @return copy of this response, which is flagged as not modified
+   */
+  RestResponse asNotModified() {
+    return notModified ? this : new RestResponse(body, eTag, lastModified, true);
+  }
+}
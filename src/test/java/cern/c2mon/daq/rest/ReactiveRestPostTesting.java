@@ -0,0 +1,175 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest;
+
+import java.util.HashMap;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cern.c2mon.daq.common.IEquipmentMessageSender;
+import cern.c2mon.daq.rest.address.RestAddressFactory;
+import cern.c2mon.daq.rest.address.RestPostAddress;
+import cern.c2mon.daq.rest.controller.ReactiveServerConfig;
+import cern.c2mon.daq.rest.controller.ReactiveUpdateHandler;
+import cern.c2mon.daq.rest.controller.RestController;
+import cern.c2mon.daq.rest.scheduling.PostScheduler;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import cern.c2mon.shared.common.process.IEquipmentConfiguration;
+
+import static org.easymock.EasyMock.isA;
+
+/**
+ * Functional tests of the reactive server mode, equivalent to {@link RestPostTesting}
+ */
+public class ReactiveRestPostTesting {
+
+  private IEquipmentMessageSender sender;
+
+  private IEquipmentConfiguration configuration;
+
+  private ISourceDataTag tag;
+
+  private PostScheduler scheduler;
+
+  private WebTestClient client;
+
+  @Before
+  public void setUp() {
+    sender = EasyMock.createMock(IEquipmentMessageSender.class);
+    configuration = EasyMock.createMock(IEquipmentConfiguration.class);
+    tag = EasyMock.createNiceMock(ISourceDataTag.class);
+    scheduler = new PostScheduler(sender, configuration);
+
+    RestController restController = new RestController();
+    restController.setPostScheduler(scheduler);
+    ReactiveUpdateHandler handler = new ReactiveUpdateHandler(restController, new ObjectMapper());
+    client = WebTestClient.bindToRouterFunction(new ReactiveServerConfig().restRoutes(handler)).build();
+
+    HashMap<String, String> map = new HashMap<>();
+    map.put("mode", "POST");
+    RestPostAddress hardwareAddress = (RestPostAddress) RestAddressFactory.createHardwareAddress(map);
+
+    EasyMock.expect(configuration.getSourceDataTag(1L)).andReturn(tag).anyTimes();
+    EasyMock.expect(tag.getHardwareAddress()).andReturn(hardwareAddress).anyTimes();
+    EasyMock.expect(tag.getCurrentValue()).andReturn(new SourceDataTagValue()).anyTimes();
+    EasyMock.expect(configuration.getSourceDataTagIdByName("name")).andReturn(1L).anyTimes();
+    EasyMock.expect(configuration.getSourceDataTagIdByName("unknown")).andThrow(new IllegalArgumentException()).anyTimes();
+  }
+
+  @After
+  public void afterTest() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void messageReceived() {
+    EasyMock.expect(sender.update(EasyMock.eq(1L), isA(ValueUpdate.class))).andReturn(true).times(2);
+    replay();
+
+    client.post().uri("/tags/1").contentType(MediaType.TEXT_PLAIN).bodyValue("testText").exchange()
+        .expectStatus().isOk()
+        .expectBody(String.class).isEqualTo("\"OK\"");
+    client.post().uri("/tags/name").contentType(MediaType.TEXT_PLAIN).bodyValue("testText").exchange()
+        .expectStatus().isOk()
+        .expectBody(String.class).isEqualTo("\"OK\"");
+
+    EasyMock.verify(sender);
+  }
+
+  @Test
+  public void jsonMessageReceived() {
+    EasyMock.expect(sender.update(EasyMock.eq(1L), isA(ValueUpdate.class))).andReturn(true);
+    replay();
+
+    client.post().uri("/update").contentType(MediaType.APPLICATION_JSON).bodyValue("{\"name\": \"name\", \"value\": 1}").exchange()
+        .expectStatus().isOk()
+        .expectBody(String.class).isEqualTo("\"OK\"");
+    client.post().uri("/update").contentType(MediaType.APPLICATION_JSON).bodyValue("{\"name\": \"unknown\", \"value\": 1}").exchange()
+        .expectStatus().isOk()
+        .expectBody(String.class).isEqualTo("\"BAD_REQUEST\"");
+
+    EasyMock.verify(sender);
+  }
+
+  @Test
+  public void wrongMessageReceived() {
+    replay();
+
+    // unknown method:
+    client.post().uri("/wrong/1").contentType(MediaType.TEXT_PLAIN).bodyValue("testText").exchange()
+        .expectStatus().isNotFound();
+
+    // missing PathVariable:
+    client.post().uri("/tags/").contentType(MediaType.TEXT_PLAIN).bodyValue("testText").exchange()
+        .expectStatus().isNotFound();
+
+    // missing content:
+    client.post().uri("/tags/1").contentType(MediaType.TEXT_PLAIN).exchange()
+        .expectStatus().isBadRequest();
+
+    EasyMock.verify(sender);
+  }
+
+  @Test
+  public void batchUpdateReceived() {
+    EasyMock.expect(sender.update(EasyMock.eq(1L), isA(ValueUpdate.class))).andReturn(true).times(2);
+    replay();
+
+    String updates = "[{\"name\": \"name\", \"value\": 1}, {\"name\": \"unknown\", \"value\": 2}, {\"name\": \"name\", \"value\": 3}]";
+    client.post().uri("/updates").contentType(MediaType.APPLICATION_JSON).bodyValue(updates).exchange()
+        .expectStatus().isOk()
+        .expectBody(String.class).isEqualTo("[\"OK\",\"BAD_REQUEST\",\"OK\"]");
+
+    EasyMock.verify(sender);
+  }
+
+  @Test
+  public void streamedUpdatesReceived() {
+    EasyMock.expect(sender.update(EasyMock.eq(1L), isA(ValueUpdate.class))).andReturn(true).times(2);
+    replay();
+
+    String updates = "{\"name\": \"name\", \"value\": 1}\n"
+        + "{\"name\": \"unknown\", \"value\": 2}\n"
+        + "\n"
+        + "{\"name\": \"name\", \"value\": 3}\n"
+        + "{not json}\n";
+    client.post().uri("/updates/stream").contentType(MediaType.parseMediaType("application/x-ndjson")).bodyValue(updates).exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.received").isEqualTo(4)
+        .jsonPath("$.accepted").isEqualTo(2)
+        .jsonPath("$.rejected").isEqualTo(2)
+        .jsonPath("$.errors[0].line").isEqualTo(2)
+        .jsonPath("$.errors[1].status").isEqualTo("BAD_REQUEST");
+
+    EasyMock.verify(sender);
+  }
+
+  private void replay() {
+    EasyMock.replay(sender, configuration, tag);
+    scheduler.addTask(1L);
+  }
+}
@@ -0,0 +1,85 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.daq.common.IEquipmentMessageSender;
+import cern.c2mon.daq.rest.address.RestGetAddress;
+import cern.c2mon.daq.rest.address.RestPostAddress;
+import cern.c2mon.shared.common.datatag.DataTagAddress;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.process.IEquipmentConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestDelegatorTest {
+
+  private RequestDelegator requestDelegator;
+
+  @Before
+  public void setUp() {
+    requestDelegator = new RequestDelegator(EasyMock.createNiceMock(IEquipmentMessageSender.class),
+        EasyMock.createNiceMock(IEquipmentConfiguration.class));
+  }
+
+  @After
+  public void afterTest() {
+    requestDelegator.shutdown();
+  }
+
+  @Test
+  public void testAddDataTags() {
+    SourceDataTag getTag = createTag(1L, "get", "GET");
+    SourceDataTag postTag = createTag(2L, "post", "POST");
+    SourceDataTag invalidTag = createTag(3L, "invalid", "PUT");
+
+    Map<ISourceDataTag, String> failures = requestDelegator.addDataTags(Arrays.asList(getTag, postTag, invalidTag));
+
+    assertEquals(1, failures.size());
+    assertTrue(failures.containsKey(invalidTag));
+    assertTrue(getTag.getHardwareAddress() instanceof RestGetAddress);
+    assertTrue(postTag.getHardwareAddress() instanceof RestPostAddress);
+
+    // POST messages are accepted for the registered tags only
+    assertEquals(Long.valueOf(2L), requestDelegator.getPostScheduler().findIdByName("post"));
+    assertTrue(requestDelegator.getPostScheduler().contains(2L));
+    assertFalse(requestDelegator.getPostScheduler().contains(1L));
+    assertFalse(requestDelegator.getPostScheduler().contains(3L));
+  }
+
+  private SourceDataTag createTag(Long id, String name, String mode) {
+    HashMap<String, String> map = new HashMap<>();
+    map.put("mode", mode);
+    map.put("url", "http://www.testaddress.org/" + name);
+
+    SourceDataTag tag = new SourceDataTag(id, name, false);
+    tag.setDataType("String");
+    tag.setAddress(new DataTagAddress(map));
+    return tag;
+  }
+}
@@ -18,18 +18,27 @@ package cern.c2mon.daq.rest;
 
 import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.isA;
+import static org.junit.Assert.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
@@ -39,10 +48,15 @@ import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
 import cern.c2mon.daq.common.IEquipmentMessageSender;
 import cern.c2mon.daq.rest.address.RestAddressFactory;
 import cern.c2mon.daq.rest.address.RestPostAddress;
 import cern.c2mon.daq.rest.config.WebConfigTestStartup;
+import cern.c2mon.daq.rest.controller.BinaryFormatConfig;
+import cern.c2mon.daq.rest.controller.MessagePackHttpMessageConverter;
 import cern.c2mon.daq.rest.controller.RestController;
 import cern.c2mon.daq.rest.scheduling.PostScheduler;
 import cern.c2mon.shared.common.datatag.ISourceDataTag;
@@ -270,7 +284,6 @@ public class RestPostTesting {
 
     // mocks for mvc post
     EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(sourceDataTag).anyTimes();
-    EasyMock.expect(sourceDataTag.getHardwareAddress()).andReturn(hardwareAddress);
     EasyMock.expect(sourceDataTag.getCurrentValue()).andReturn(value);
     EasyMock.expect(equipmentMessageSender.update(isA(Long.class), isA(ValueUpdate.class))).andReturn(true);
     EasyMock.replay(equipmentConfiguration, sourceDataTag, equipmentMessageSender);
@@ -290,7 +303,135 @@ public class RestPostTesting {
     EasyMock.verify(equipmentConfiguration, sourceDataTag, equipmentMessageSender);
   }
 
-  
+  /**
+   * Test the batch endpoint, which returns a status for every update
+   */
+  @Test
+  public void batchUpdateReceived() throws Exception {
+    setupNamedTagMocks(2);
+
+    String updates = "[{\"name\": \"name\", \"value\": 1}, {\"name\": \"unknown\", \"value\": 2}, {\"name\": \"name\", \"value\": 3}]";
+    mockMvc.perform(post("/updates").contentType(MediaType.APPLICATION_JSON).content(updates))
+        .andExpect(status().isOk())
+        .andExpect(content().string("[\"OK\",\"BAD_REQUEST\",\"OK\"]"));
+
+    EasyMock.verify(equipmentMessageSender);
+  }
+
+  /**
+   * Clients without Accept header must still receive JSON, although binary formats are supported
+   */
+  @Test
+  public void jsonIsAnsweredWithoutAcceptHeader() throws Exception {
+    setupNamedTagMocks(2);
+
+    mockMvc.perform(post("/update").contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"name\", \"value\": 1}"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+        .andExpect(content().string("\"OK\""));
+
+    mockMvc.perform(post("/updates").contentType(MediaType.APPLICATION_JSON).content("[{\"name\": \"name\", \"value\": 2}]"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+        .andExpect(content().string("[\"OK\"]"));
+
+    EasyMock.verify(equipmentMessageSender);
+  }
+
+  @Test
+  public void streamedUpdatesReceived() throws Exception {
+    setupNamedTagMocks(2);
+
+    String updates = "{\"name\": \"name\", \"value\": 1}\n"
+        + "{\"name\": \"unknown\", \"value\": 2}\n"
+        + "\n"
+        + "{\"name\": \"name\", \"value\": 3}\n"
+        + "{not json}\n";
+    mockMvc.perform(post("/updates/stream").contentType("application/x-ndjson").content(updates))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.received").value(4))
+        .andExpect(jsonPath("$.accepted").value(2))
+        .andExpect(jsonPath("$.rejected").value(2))
+        .andExpect(jsonPath("$.errors[0].line").value(2))
+        .andExpect(jsonPath("$.errors[1].line").value(5))
+        .andExpect(jsonPath("$.errors[1].status").value("BAD_REQUEST"));
+
+    EasyMock.verify(equipmentMessageSender);
+  }
+
+  /**
+   * Test the CBOR and MessagePack encoding of the single value, batch and stream endpoints
+   */
+  @Test
+  public void binaryUpdatesReceived() throws Exception {
+    Capture<ValueUpdate> values = setupNamedTagMocks(4);
+
+    ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+    ObjectMapper msgpack = new ObjectMapper(new MessagePackFactory());
+
+    // the value is decoded with its type
+    mockMvc.perform(post("/tags/1").contentType(BinaryFormatConfig.APPLICATION_CBOR_VALUE).content(cbor.writeValueAsBytes(42)))
+        .andExpect(status().isOk());
+
+    List<RestTagUpdate> updates = Arrays.asList(createUpdate("name", 1), createUpdate("unknown", 2));
+    mockMvc.perform(post("/updates").contentType(MessagePackHttpMessageConverter.APPLICATION_MSGPACK_VALUE)
+        .content(msgpack.writeValueAsBytes(updates)))
+        .andExpect(status().isOk())
+        .andExpect(content().string("[\"OK\",\"BAD_REQUEST\"]"));
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    stream.write(cbor.writeValueAsBytes(createUpdate("name", 3)));
+    stream.write(cbor.writeValueAsBytes(createUpdate("name", 4)));
+    mockMvc.perform(post("/updates/stream").contentType(BinaryFormatConfig.APPLICATION_CBOR_VALUE)
+        .content(stream.toByteArray()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.received").value(2))
+        .andExpect(jsonPath("$.accepted").value(2));
+
+    EasyMock.verify(equipmentMessageSender);
+    assertEquals(42, values.getValues().get(0).getValue());
+    assertEquals(1, values.getValues().get(1).getValue());
+    assertEquals(4, values.getValues().get(3).getValue());
+  }
+
+  private static RestTagUpdate createUpdate(String name, Object value) {
+    RestTagUpdate update = new RestTagUpdate();
+    update.setName(name);
+    update.setValue(value);
+    return update;
+  }
+
+  /**
+   * Registers tag 1 with the name "name" and without postFrequency. The name
+   * "unknown" is not known by the configuration.
+   *
+   * @param expectedUpdates The number of updates, which are expected for tag 1
+   * @return capture of the updates sent for tag 1
+   */
+  private Capture<ValueUpdate> setupNamedTagMocks(int expectedUpdates) {
+    EasyMock.resetToDefault(equipmentMessageSender, equipmentConfiguration);
+    EasyMock.resetToNice(sourceDataTag);
+
+    PostScheduler scheduler = new PostScheduler(equipmentMessageSender, equipmentConfiguration);
+    restController.setPostScheduler(scheduler);
+
+    HashMap<String, String> map = new HashMap<>();
+    map.put("mode", "POST");
+    RestPostAddress hardwareAddress = (RestPostAddress) RestAddressFactory.createHardwareAddress(map);
+
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(sourceDataTag).anyTimes();
+    EasyMock.expect(sourceDataTag.getHardwareAddress()).andReturn(hardwareAddress).anyTimes();
+    EasyMock.expect(sourceDataTag.getCurrentValue()).andReturn(new SourceDataTagValue()).anyTimes();
+    EasyMock.expect(equipmentConfiguration.getSourceDataTagIdByName("name")).andReturn(1L).anyTimes();
+    EasyMock.expect(equipmentConfiguration.getSourceDataTagIdByName("unknown")).andThrow(new IllegalArgumentException()).anyTimes();
+    Capture<ValueUpdate> values = EasyMock.newCapture(CaptureType.ALL);
+    EasyMock.expect(equipmentMessageSender.update(EasyMock.eq(1L), EasyMock.capture(values))).andReturn(true).times(expectedUpdates);
+    EasyMock.replay(equipmentMessageSender, equipmentConfiguration, sourceDataTag);
+
+    scheduler.addTask(1L);
+    return values;
+  }
+
   private void setupMocks(boolean byName) {
     // setup
     PostScheduler scheduler = new PostScheduler(equipmentMessageSender, equipmentConfiguration);
@@ -319,7 +460,6 @@ public class RestPostTesting {
     }
 
     EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(sourceDataTag).anyTimes();
-    EasyMock.expect(sourceDataTag.getHardwareAddress()).andReturn(hardwareAddress);
     EasyMock.expect(sourceDataTag.getCurrentValue()).andReturn(value);
 
     EasyMock.expect(equipmentMessageSender.update(isA(Long.class), isA(ValueUpdate.class))).andReturn(true);
@@ -0,0 +1,164 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.benchmark;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+
+import cern.c2mon.daq.common.IEquipmentMessageSender;
+import cern.c2mon.daq.rest.address.RestAddressFactory;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import cern.c2mon.shared.common.datatag.address.HardwareAddress;
+import cern.c2mon.shared.common.process.IEquipmentConfiguration;
+
+/**
+ * Minimal stubs of the DAQ core interfaces for the benchmarks. Mocking
+ * frameworks would record every invocation and thereby dominate the
+ * measurement, so the stubs are plain dynamic proxies.
+ */
+final class BenchmarkStubs {
+
+  private BenchmarkStubs() {}
+
+  /**
+   * @param updates counts the value and quality updates
+   * @return message sender, which only counts the updates and accepts every value
+   */
+  static IEquipmentMessageSender messageSender(LongAdder updates) {
+    return stub(IEquipmentMessageSender.class, (method, args) -> {
+      if ("update".equals(method.getName())) {
+        updates.increment();
+      }
+      return defaultValue(method.getReturnType());
+    });
+  }
+
+  /**
+   * Creates an equipment configuration, where all tags share the given hardware address.
+   * The tag ids range from <code>0</code> to <code>tags - 1</code> and are named <code>tag&lt;id&gt;</code>.
+   *
+   * @param tags            number of tags
+   * @param addressSettings The parameters of the POST or GET address
+   * @return equipment configuration stub
+   */
+  static IEquipmentConfiguration equipmentConfiguration(int tags, Map<String, String> addressSettings) {
+    ISourceDataTag tag = tag(RestAddressFactory.createHardwareAddress(addressSettings), "String");
+    return equipmentConfiguration(tags, id -> tag);
+  }
+
+  /**
+   * Creates an equipment configuration with the tags of the given factory.
+   * The tag ids range from <code>0</code> to <code>tags - 1</code> and are named <code>tag&lt;id&gt;</code>.
+   *
+   * @param tags       number of tags
+   * @param tagFactory creates the tag of the given id
+   * @return equipment configuration stub
+   */
+  static IEquipmentConfiguration equipmentConfiguration(int tags, IntFunction<ISourceDataTag> tagFactory) {
+    ISourceDataTag[] sourceDataTags = new ISourceDataTag[tags];
+    Map<String, Long> ids = new HashMap<>(tags * 2);
+    for (int i = 0; i < tags; i++) {
+      sourceDataTags[i] = tagFactory.apply(i);
+      ids.put(tagName(i), (long) i);
+    }
+
+    return stub(IEquipmentConfiguration.class, (method, args) -> {
+      switch (method.getName()) {
+        case "getSourceDataTag":
+          long tagId = (Long) args[0];
+          return tagId >= 0 && tagId < tags ? sourceDataTags[(int) tagId] : null;
+        case "getSourceDataTagIdByName":
+          Long id = ids.get(args[0]);
+          if (id == null) {
+            throw new IllegalArgumentException("Unknown tag name " + args[0]);
+          }
+          return id;
+        case "getName":
+          return "BENCHMARK";
+        default:
+          return defaultValue(method.getReturnType());
+      }
+    });
+  }
+
+  /**
+   * @param hardwareAddress The REST address of the tag
+   * @param dataType        The data type of the tag
+   * @return tag stub without value deadband
+   */
+  static ISourceDataTag tag(HardwareAddress hardwareAddress, String dataType) {
+    SourceDataTagValue currentValue = new SourceDataTagValue();
+    return stub(ISourceDataTag.class, (method, args) -> {
+      switch (method.getName()) {
+        case "getHardwareAddress":
+          return hardwareAddress;
+        case "getCurrentValue":
+          return currentValue;
+        case "getDataType":
+          return dataType;
+        default:
+          return defaultValue(method.getReturnType());
+      }
+    });
+  }
+
+  /**
+   * Creates a dynamic proxy of the given interface. The methods of {@link Object} are answered by the stub itself.
+   */
+  static <T> T stub(Class<T> type, BiFunction<Method, Object[], Object> answer) {
+    return type.cast(Proxy.newProxyInstance(BenchmarkStubs.class.getClassLoader(), new Class<?>[] {type},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "equals":
+              return proxy == args[0];
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "toString":
+              return type.getSimpleName() + " stub";
+            default:
+              return answer.apply(method, args);
+          }
+        }));
+  }
+
+  static String tagName(int id) {
+    return "tag" + id;
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) {
+      return true;
+    } else if (type == long.class) {
+      return 0L;
+    } else if (type == int.class) {
+      return 0;
+    } else if (type == short.class) {
+      return (short) 0;
+    } else if (type == float.class) {
+      return 0f;
+    } else if (type == double.class) {
+      return 0d;
+    }
+    return null;
+  }
+}
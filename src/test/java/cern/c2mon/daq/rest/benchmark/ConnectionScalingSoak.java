@@ -0,0 +1,339 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.codec.CodecsAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.reactive.HttpHandlerAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.reactive.ReactiveWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.reactive.WebFluxAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+
+import cern.c2mon.daq.rest.controller.ReactiveServerConfig;
+import cern.c2mon.daq.rest.controller.RestController;
+import cern.c2mon.daq.rest.scheduling.PostScheduler;
+
+/**
+ * Connection scaling test of the POST endpoints in the servlet (Tomcat) or
+ * reactive (Netty) server mode. A single-threaded NIO client opens thousands
+ * of keep-alive connections, which are mostly idle and send a value update
+ * to <code>/tags/{id}</code> once per interval. At the end it prints the
+ * number of established connections, the achieved request rate, the latency
+ * percentiles and the number of server threads.
+ * <p/>
+ * Run with <code>mvn verify -Psoak -Dsoak.main=cern.c2mon.daq.rest.benchmark.ConnectionScalingSoak [-Dsoak.mode=reactive ...]</code>.
+ * The settings are read from the following system properties:
+ * <ul>
+ * <li><code>soak.mode</code>: <code>servlet</code> or <code>reactive</code> (default servlet)</li>
+ * <li><code>soak.connections</code>: number of concurrent connections (default 5000)</li>
+ * <li><code>soak.interval</code>: time between two updates of a connection in milliseconds (default 1000)</li>
+ * <li><code>soak.rampUp</code> and <code>soak.duration</code>: in seconds (default 10 and 60)</li>
+ * </ul>
+ * The client and the server run in the same JVM. The number of open files
+ * of the process (<code>ulimit -n</code>) must be at least twice the number of connections.
+ */
+public final class ConnectionScalingSoak {
+
+  private static final int MAX_LATENCY_MILLIS = 10_000;
+
+  private static final int TAGS = 1_000;
+
+  private ConnectionScalingSoak() {}
+
+  public static void main(String[] args) throws Exception {
+    String mode = System.getProperty("soak.mode", "servlet");
+    int connections = Integer.getInteger("soak.connections", 5_000);
+    int interval = Integer.getInteger("soak.interval", 1_000);
+    int rampUp = Integer.getInteger("soak.rampUp", 10);
+    int duration = Integer.getInteger("soak.duration", 60);
+
+    SpringApplication application = new SpringApplication(ServerApplication.class);
+    application.setWebApplicationType("reactive".equalsIgnoreCase(mode) ? WebApplicationType.REACTIVE : WebApplicationType.SERVLET);
+    application.setDefaultProperties(Collections.singletonMap("server.port", "0"));
+
+    try (ConfigurableApplicationContext context = application.run()) {
+      Map<String, String> address = new HashMap<>();
+      address.put("mode", "POST");
+      LongAdder updates = new LongAdder();
+      PostScheduler scheduler = new PostScheduler(BenchmarkStubs.messageSender(updates), BenchmarkStubs.equipmentConfiguration(TAGS, address));
+      for (long id = 0; id < TAGS; id++) {
+        scheduler.addTask(id);
+      }
+      context.getBean(RestController.class).setPostScheduler(scheduler);
+      int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+      System.out.printf("Opening %d connections to the %s server on port %d, one update per connection every %d ms%n",
+          connections, mode, port, interval);
+
+      try (Client client = new Client(new InetSocketAddress("localhost", port), connections, interval, rampUp)) {
+        client.run(TimeUnit.SECONDS.toNanos(rampUp));
+        client.reset();
+        updates.reset();
+
+        long start = System.nanoTime();
+        client.run(TimeUnit.SECONDS.toNanos(duration));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double configuredRate = connections * 1000.0 / interval;
+        System.out.printf("Connections:      %d open, %d failed to connect, %d closed by the server%n",
+            client.open, client.connectFailures, client.closed);
+        System.out.printf("Request rate:     %.1f/s achieved, %.1f/s configured (%.1f %%)%n",
+            client.responses / seconds, configuredRate, 100 * client.responses / seconds / configuredRate);
+        System.out.printf("Responses:        %d (%d errors), %d updates sent to the DAQ core%n", client.responses, client.errors, updates.sum());
+        System.out.printf("Latency:          p50 %d ms, p99 %d ms, max %d ms%n",
+            client.getLatencyPercentile(50), client.getLatencyPercentile(99), client.maxLatency);
+        System.out.printf("Threads:          %d live, %d peak%n",
+            ManagementFactory.getThreadMXBean().getThreadCount(), ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        System.out.printf("Heap used:        %d MB%n", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024));
+      } finally {
+        scheduler.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Minimal web application with the REST endpoints. The auto-configurations
+   * of the servlet and the reactive mode are only applied in their mode.
+   */
+  @SpringBootConfiguration
+  @Import({RestController.class, ReactiveServerConfig.class})
+  @ImportAutoConfiguration({JacksonAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class,
+      ServletWebServerFactoryAutoConfiguration.class, DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class,
+      ReactiveWebServerFactoryAutoConfiguration.class, CodecsAutoConfiguration.class, HttpHandlerAutoConfiguration.class,
+      WebFluxAutoConfiguration.class})
+  static class ServerApplication {
+  }
+
+  /**
+   * Single-threaded NIO client, which keeps one request in flight at most per connection
+   */
+  private static class Client implements AutoCloseable {
+
+    private final Selector selector = Selector.open();
+
+    private final PriorityQueue<Connection> schedule = new PriorityQueue<>((a, b) -> Long.compare(a.due, b.due));
+
+    private final long interval;
+
+    private final long[] latencyHistogram = new long[MAX_LATENCY_MILLIS + 1];
+
+    private int open;
+    private int connectFailures;
+    private int closed;
+    private long responses;
+    private long errors;
+    private long maxLatency;
+
+    Client(InetSocketAddress address, int connections, int intervalMillis, int rampUp) throws IOException {
+      this.interval = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+      long now = System.nanoTime();
+      long rampUpNanos = TimeUnit.SECONDS.toNanos(rampUp);
+      for (int i = 0; i < connections; i++) {
+        // the connections are opened evenly over the ramp-up time
+        Connection connection = new Connection(address, "/tags/" + (i % TAGS));
+        connection.due = now + rampUpNanos * i / connections;
+        schedule.add(connection);
+      }
+    }
+
+    void run(long nanos) throws IOException {
+      long end = System.nanoTime() + nanos;
+      long now;
+      while ((now = System.nanoTime()) < end) {
+        while (!schedule.isEmpty() && schedule.peek().due <= now) {
+          Connection connection = schedule.poll();
+          if (connection.channel == null) {
+            connection.connect();
+          } else {
+            connection.send(now);
+          }
+        }
+
+        long timeout = schedule.isEmpty() ? end - now : Math.min(end, schedule.peek().due) - now;
+        selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout)));
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          ((Connection) key.attachment()).handle(key);
+        }
+      }
+    }
+
+    void reset() {
+      responses = 0;
+      errors = 0;
+      maxLatency = 0;
+      Arrays.fill(latencyHistogram, 0);
+    }
+
+    long getLatencyPercentile(double percentile) {
+      long threshold = (long) Math.ceil(responses * percentile / 100);
+      long count = 0;
+      for (int i = 0; i <= MAX_LATENCY_MILLIS; i++) {
+        count += latencyHistogram[i];
+        if (count >= threshold && count > 0) {
+          return i;
+        }
+      }
+      return MAX_LATENCY_MILLIS;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (SelectionKey key : selector.keys()) {
+        key.channel().close();
+      }
+      selector.close();
+    }
+
+    private class Connection {
+
+      private final InetSocketAddress address;
+
+      private final ByteBuffer request;
+
+      private final ByteBuffer response = ByteBuffer.allocate(4096);
+
+      private SocketChannel channel;
+
+      private long due;
+
+      private long sentAt;
+
+      Connection(InetSocketAddress address, String path) {
+        this.address = address;
+        String body = "42";
+        this.request = ByteBuffer.wrap(("POST " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Type: text/plain\r\n"
+            + "Content-Length: " + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.US_ASCII));
+      }
+
+      void connect() throws IOException {
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(address);
+        channel.register(selector, SelectionKey.OP_CONNECT, this);
+      }
+
+      void send(long now) throws IOException {
+        sentAt = now;
+        request.rewind();
+        channel.write(request);
+        channel.keyFor(selector).interestOps(request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      }
+
+      void handle(SelectionKey key) throws IOException {
+        try {
+          if (key.isConnectable()) {
+            channel.finishConnect();
+            open++;
+            key.interestOps(0);
+            // the first update is sent at a random point within the interval
+            due = System.nanoTime() + ThreadLocalRandom.current().nextLong(interval);
+            schedule.add(this);
+          } else if (key.isWritable()) {
+            channel.write(request);
+            if (!request.hasRemaining()) {
+              key.interestOps(SelectionKey.OP_READ);
+            }
+          } else if (key.isReadable()) {
+            read(key);
+          }
+        } catch (IOException e) {
+          if (sentAt == 0 && !channel.isConnected()) {
+            connectFailures++;
+          } else {
+            closed++;
+            open--;
+          }
+          key.cancel();
+          channel.close();
+        }
+      }
+
+      private void read(SelectionKey key) throws IOException {
+        if (channel.read(response) < 0) {
+          throw new IOException("Connection closed by the server");
+        }
+        if (!isComplete()) {
+          return;
+        }
+
+        long now = System.nanoTime();
+        long latency = TimeUnit.NANOSECONDS.toMillis(now - sentAt);
+        latencyHistogram[(int) Math.min(latency, MAX_LATENCY_MILLIS)]++;
+        maxLatency = Math.max(maxLatency, latency);
+        responses++;
+        if (!new String(response.array(), 0, 12, StandardCharsets.US_ASCII).endsWith("200")) {
+          errors++;
+        }
+
+        response.clear();
+        key.interestOps(0);
+        due = sentAt + interval;
+        schedule.add(this);
+      }
+
+      /**
+       * Checks whether the response is complete. The body is either sent with a content length or chunked.
+       */
+      private boolean isComplete() {
+        String received = new String(response.array(), 0, response.position(), StandardCharsets.US_ASCII);
+        int headerEnd = received.indexOf("\r\n\r\n");
+        if (headerEnd < 0) {
+          return false;
+        }
+        String headers = received.substring(0, headerEnd).toLowerCase();
+        int contentLength = headers.indexOf("content-length:");
+        if (contentLength >= 0) {
+          int lineEnd = headers.indexOf("\r\n", contentLength);
+          String length = headers.substring(contentLength + 15, lineEnd < 0 ? headers.length() : lineEnd).trim();
+          return received.length() >= headerEnd + 4 + Integer.parseInt(length);
+        }
+        return received.endsWith("0\r\n\r\n");
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jayway.jsonpath.JsonPath;
+
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.webaccess.RESTConnector;
+
+/**
+ * Measures the cost of a single poll, i.e. the request through the pooled
+ * HTTP client to a local {@link StubHttpServer} and the extraction of the
+ * value, for different payload sizes. Together with the GC profiler it gives
+ * the CPU time and the allocation per poll. The scheduling behaviour under
+ * load is covered by the {@link GetSchedulerSoak}.
+ * <p/>
+ * Run with <code>mvn verify -Pbenchmark -Dbenchmark=GetPollBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetPollBenchmark {
+
+  /** Size of the response in bytes */
+  @Param({"256", "8192", "131072"})
+  private int payloadSize;
+
+  private StubHttpServer server;
+
+  private String url;
+
+  private final JsonPath jsonPath = JsonPath.compile("$.seq");
+
+  @Setup
+  public void setup() throws IOException {
+    RESTConnector.configure(new RestDaqProperties.Http());
+    server = new StubHttpServer(payloadSize, 0, 0, 4);
+    url = server.url("/resource/0");
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.close();
+  }
+
+  @Benchmark
+  public Long poll() {
+    String restMessage = RESTConnector.sendAndReceiveRequest(url);
+    return JsonPath.parse(restMessage).read(jsonPath, Long.class);
+  }
+}
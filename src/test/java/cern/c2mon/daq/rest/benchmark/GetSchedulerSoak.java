@@ -0,0 +1,158 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import cern.c2mon.daq.rest.address.RestAddressFactory;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.config.VirtualThreads;
+import cern.c2mon.daq.rest.scheduling.GetScheduler;
+import cern.c2mon.daq.rest.webaccess.RESTConnector;
+import cern.c2mon.shared.common.process.IEquipmentConfiguration;
+
+/**
+ * Soak test of the {@link GetScheduler}, which polls thousands of tags from a
+ * {@link StubHttpServer} over a longer period. At the end it prints the
+ * achieved versus the configured poll rate, the schedule drift, the CPU time
+ * per poll and the GC activity.
+ * <p/>
+ * Run with <code>mvn verify -Psoak [-Dsoak.tags=5000 -Dsoak.duration=300 ...]</code>.
+ * The settings are read from the following system properties:
+ * <ul>
+ * <li><code>soak.tags</code>: number of GET tags (default 2000)</li>
+ * <li><code>soak.tagsPerUrl</code>: number of tags sharing the same url (default 1)</li>
+ * <li><code>soak.frequency</code>: poll frequency in seconds (default 1)</li>
+ * <li><code>soak.warmup</code> and <code>soak.duration</code>: in seconds (default 10 and 60)</li>
+ * <li><code>soak.payloadSize</code>: size of the responses in bytes (default 1024)</li>
+ * <li><code>soak.latency</code>: response latency in milliseconds (default 5)</li>
+ * <li><code>soak.errorRate</code>: share of failed responses, between 0 and 1 (default 0)</li>
+ * <li><code>soak.serverThreads</code>: threads of the stub server (default 64)</li>
+ * <li><code>soak.concurrency</code>: maximum number of GET requests in flight and pooled connections (default <code>soak.serverThreads</code>)</li>
+ * <li><code>soak.virtualThreads</code>: sends the requests on virtual threads instead of platform threads (default false, requires Java 21)</li>
+ * </ul>
+ * The client and the stub server run in the same JVM. The CPU time of the
+ * server threads is subtracted, whereas the GC activity includes both.
+ */
+public final class GetSchedulerSoak {
+
+  private GetSchedulerSoak() {}
+
+  public static void main(String[] args) throws Exception {
+    int tags = Integer.getInteger("soak.tags", 2_000);
+    int tagsPerUrl = Integer.getInteger("soak.tagsPerUrl", 1);
+    int frequency = Integer.getInteger("soak.frequency", 1);
+    int warmup = Integer.getInteger("soak.warmup", 10);
+    int duration = Integer.getInteger("soak.duration", 60);
+    int payloadSize = Integer.getInteger("soak.payloadSize", 1_024);
+    int latency = Integer.getInteger("soak.latency", 5);
+    double errorRate = Double.parseDouble(System.getProperty("soak.errorRate", "0"));
+    int serverThreads = Integer.getInteger("soak.serverThreads", 64);
+    int concurrency = Integer.getInteger("soak.concurrency", serverThreads);
+    boolean virtualThreads = Boolean.getBoolean("soak.virtualThreads");
+
+    RestDaqProperties properties = new RestDaqProperties();
+    properties.setVirtualThreads(virtualThreads);
+    properties.getGet().setMaxConcurrentRequests(concurrency);
+    properties.getGet().setMaxConcurrentRequestsPerHost(concurrency);
+    properties.getHttp().setMaxConnections(concurrency);
+    properties.getHttp().setMaxConnectionsPerRoute(concurrency);
+    RESTConnector.configure(properties.getHttp());
+
+    try (StubHttpServer server = new StubHttpServer(payloadSize, latency, errorRate, serverThreads)) {
+      IEquipmentConfiguration configuration = BenchmarkStubs.equipmentConfiguration(tags, id -> {
+        Map<String, String> address = new HashMap<>();
+        address.put("mode", "GET");
+        address.put("url", server.url("/resource/" + id / tagsPerUrl));
+        address.put("getFrequency", Integer.toString(frequency));
+        address.put("jsonPathExpression", "$.seq");
+        return BenchmarkStubs.tag(RestAddressFactory.createHardwareAddress(address), "Long");
+      });
+
+      LongAdder updates = new LongAdder();
+      GetScheduler scheduler = new GetScheduler(BenchmarkStubs.messageSender(updates), configuration, properties);
+      for (long id = 0; id < tags; id++) {
+        scheduler.addTask(id);
+      }
+
+      System.out.printf("Polling %d tags (%d urls) every %d s, payload %d bytes, latency %d ms, error rate %.2f%n",
+          tags, (tags + tagsPerUrl - 1) / tagsPerUrl, frequency, payloadSize, latency, errorRate);
+      System.out.printf("Up to %d requests in flight on %s threads%n", concurrency,
+          virtualThreads && VirtualThreads.isSupported() ? "virtual" : "platform");
+      TimeUnit.SECONDS.sleep(warmup);
+
+      server.expectInterval(TimeUnit.SECONDS.toMillis(frequency));
+      server.reset();
+      updates.reset();
+      Snapshot start = new Snapshot(server);
+
+      TimeUnit.SECONDS.sleep(duration);
+
+      Snapshot end = new Snapshot(server);
+      scheduler.shutdown();
+
+      double seconds = (end.wallTime - start.wallTime) / 1e9;
+      long polls = server.getRequests();
+      double configuredRate = (double) server.getPaths() / frequency;
+      double achievedRate = polls / seconds;
+      long clientCpu = (end.processCpuTime - start.processCpuTime) - (end.serverCpuTime - start.serverCpuTime);
+
+      System.out.printf("Polls:            %d in %.1f s (%d failed)%n", polls, seconds, server.getErrors());
+      System.out.printf("Poll rate:        %.1f/s achieved, %.1f/s configured (%.1f %%)%n",
+          achievedRate, configuredRate, 100 * achievedRate / configuredRate);
+      System.out.printf("Updates:          %d (%.1f/s)%n", updates.sum(), updates.sum() / seconds);
+      System.out.printf("Schedule drift:   p50 %d ms, p99 %d ms, max %d ms%n",
+          server.getDriftPercentile(50), server.getDriftPercentile(99), server.getMaxDrift());
+      System.out.printf("Client CPU:       %.1f us per poll, %.1f %% of one core%n",
+          polls > 0 ? clientCpu / 1e3 / polls : 0, 100 * clientCpu / 1e9 / seconds);
+      System.out.printf("GC:               %d collections, %d ms (%.2f %% of the time)%n",
+          end.gcCount - start.gcCount, end.gcTime - start.gcTime, 100 * (end.gcTime - start.gcTime) / 1e3 / seconds);
+      System.out.printf("Heap used:        %d MB%n", end.heapUsed / (1024 * 1024));
+      System.out.printf("Platform threads: %d live, %d peak%n",
+          ManagementFactory.getThreadMXBean().getThreadCount(), ManagementFactory.getThreadMXBean().getPeakThreadCount());
+    }
+  }
+
+  private static class Snapshot {
+    final long wallTime = System.nanoTime();
+    final long processCpuTime;
+    final long serverCpuTime;
+    long gcCount;
+    long gcTime;
+    final long heapUsed;
+
+    Snapshot(StubHttpServer server) {
+      OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+      processCpuTime = os instanceof com.sun.management.OperatingSystemMXBean
+          ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime() : 0;
+      serverCpuTime = server.getCpuTime();
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+        gcCount += Math.max(0, gc.getCollectionCount());
+        gcTime += Math.max(0, gc.getCollectionTime());
+      }
+      MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+      heapUsed = memory.getHeapMemoryUsage().getUsed();
+    }
+  }
+}
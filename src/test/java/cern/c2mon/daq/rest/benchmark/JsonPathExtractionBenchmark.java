@@ -0,0 +1,117 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.ReadContext;
+
+import cern.c2mon.daq.rest.address.RestAddressFactory;
+import cern.c2mon.daq.rest.address.RestGetAddress;
+import cern.c2mon.shared.common.type.TypeConverter;
+
+/**
+ * Compares the per-poll CPU cost of the value extraction of a group of GET
+ * tags sharing the same response:
+ * <ul>
+ * <li><code>perTagParse</code>: former behaviour, which parses the response and
+ * the expression string and resolves the data type for every tag</li>
+ * <li><code>sharedDocument</code>: pre-compiled expressions and pre-resolved
+ * data types, which are applied to a response parsed only once</li>
+ * </ul>
+ * Run with <code>mvn verify -Pbenchmark -Dbenchmark=JsonPathExtractionBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonPathExtractionBenchmark {
+
+  /** Number of tags which extract a value from the same response */
+  @Param({"1", "10", "50"})
+  private int tagsPerResponse;
+
+  private String restMessage;
+
+  private List<String> expressions;
+
+  private List<JsonPath> compiledExpressions;
+
+  private List<Class<?>> dataTypes;
+
+  @Setup
+  public void setup() {
+    StringBuilder json = new StringBuilder("{\"service\": \"benchmark\", \"metrics\": [");
+    for (int i = 0; i < 50; i++) {
+      json.append(i > 0 ? "," : "")
+          .append("{\"name\": \"metric").append(i).append("\", \"value\": ").append(i * 1.5)
+          .append(", \"unit\": \"ms\", \"tags\": {\"host\": \"host").append(i % 5).append("\"}}");
+    }
+    restMessage = json.append("]}").toString();
+
+    expressions = new ArrayList<>();
+    compiledExpressions = new ArrayList<>();
+    dataTypes = new ArrayList<>();
+    for (int i = 0; i < tagsPerResponse; i++) {
+      Map<String, String> addressParameters = new HashMap<>();
+      addressParameters.put("mode", "GET");
+      addressParameters.put("url", "http://localhost/metrics");
+      addressParameters.put("jsonPathExpression", "$.metrics[" + i + "].value");
+      RestGetAddress address = (RestGetAddress) RestAddressFactory.createHardwareAddress(addressParameters);
+
+      expressions.add(address.getJsonPathExpression());
+      compiledExpressions.add(address.getJsonPath());
+      dataTypes.add(TypeConverter.getType("Double"));
+    }
+  }
+
+  @Benchmark
+  public void perTagParse(Blackhole blackhole) {
+    for (String expression : expressions) {
+      Class<?> dataType = TypeConverter.getType("Double");
+      blackhole.consume(JsonPath.parse(restMessage).read(expression, dataType));
+    }
+  }
+
+  @Benchmark
+  public void sharedDocument(Blackhole blackhole) {
+    ReadContext document = JsonPath.parse(restMessage);
+    for (int i = 0; i < compiledExpressions.size(); i++) {
+      blackhole.consume(document.read(compiledExpressions.get(i), dataTypes.get(i)));
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import cern.c2mon.daq.rest.RestTagUpdate;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+
+/**
+ * Compares the decoding cost of a batch of {@link RestTagUpdate} messages, as
+ * received by the <code>/updates</code> endpoint, for the supported payload
+ * formats. Every operation decodes the batch and converts it into the
+ * {@link ValueUpdate} objects, which are sent to the DAQ core.
+ * <p/>
+ * The size of the encoded batch is printed at the start of every trial. Run with
+ * <code>mvn verify -Pbenchmark -Dbenchmark=PayloadFormatBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadFormatBenchmark {
+
+  public enum Format {
+    JSON(new JsonFactory()),
+    CBOR(new CBORFactory()),
+    MSGPACK(new MessagePackFactory());
+
+    private final JsonFactory factory;
+
+    Format(JsonFactory factory) {
+      this.factory = factory;
+    }
+  }
+
+  @Param({"JSON", "CBOR", "MSGPACK"})
+  private Format format;
+
+  /** Number of updates per request */
+  @Param({"1", "100"})
+  private int batchSize;
+
+  private ObjectReader reader;
+
+  private byte[] payload;
+
+  @Setup
+  public void setup() throws IOException {
+    List<RestTagUpdate> updates = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      RestTagUpdate update = new RestTagUpdate();
+      update.setName("rack/" + i + "/temperature");
+      update.setValue(20.0 + i * 0.1);
+      update.setValueDescription("measured");
+      update.setTimestamp(1545651210000L + i);
+      updates.add(update);
+    }
+
+    ObjectMapper mapper = new ObjectMapper(format.factory);
+    payload = mapper.writeValueAsBytes(updates);
+    reader = mapper.readerFor(mapper.getTypeFactory().constructCollectionType(List.class, RestTagUpdate.class));
+
+    System.out.printf("%n%s payload of %d updates: %d bytes (%.1f bytes per update)%n",
+        format, batchSize, payload.length, (double) payload.length / batchSize);
+  }
+
+  @Benchmark
+  public void decode(Blackhole blackhole) throws IOException {
+    List<RestTagUpdate> updates = reader.readValue(payload);
+    for (RestTagUpdate update : updates) {
+      blackhole.consume(new ValueUpdate(update.getValue(), update.getValueDescription(), update.getTimestamp()));
+    }
+  }
+}
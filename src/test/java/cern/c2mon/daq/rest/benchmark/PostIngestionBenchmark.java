@@ -0,0 +1,157 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import cern.c2mon.daq.rest.RestTagUpdate;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.controller.RestController;
+import cern.c2mon.daq.rest.scheduling.PostScheduler;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+
+/**
+ * Measures the hot path of the POST ingestion, from the controller methods
+ * down to the {@link PostScheduler}, against a stub message sender. The HTTP
+ * layer and the JSON decoding are not part of the measurement.
+ * <p/>
+ * Both throughput and sampled latency (incl. p99) are reported. The
+ * allocation per operation is reported by the GC profiler, which is enabled
+ * by the <code>benchmark</code> profile:
+ * <code>mvn verify -Pbenchmark -Dbenchmark=PostIngestionBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PostIngestionBenchmark {
+
+  /** Number of configured POST tags */
+  @Param({"1000", "100000", "1000000"})
+  private int tags;
+
+  /** Expected update interval in seconds, or -1 if the freshness of the tags is not checked */
+  @Param({"-1", "60"})
+  private int postFrequency;
+
+  private final LongAdder updates = new LongAdder();
+
+  private PostScheduler scheduler;
+
+  private RestController controller;
+
+  private Long[] ids;
+
+  private String[] idStrings;
+
+  private String[] names;
+
+  private RestTagUpdate[] jsonUpdates;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Map<String, String> addressSettings = new HashMap<>();
+    addressSettings.put("mode", "POST");
+    if (postFrequency > 0) {
+      addressSettings.put("postFrequency", Integer.toString(postFrequency));
+    }
+
+    scheduler = new PostScheduler(BenchmarkStubs.messageSender(updates),
+        BenchmarkStubs.equipmentConfiguration(tags, addressSettings), new RestDaqProperties());
+    controller = new RestController();
+    controller.setPostScheduler(scheduler);
+
+    ids = new Long[tags];
+    idStrings = new String[tags];
+    names = new String[tags];
+    jsonUpdates = new RestTagUpdate[tags];
+    for (int i = 0; i < tags; i++) {
+      ids[i] = (long) i;
+      idStrings[i] = Integer.toString(i);
+      names[i] = BenchmarkStubs.tagName(i);
+
+      RestTagUpdate update = new RestTagUpdate();
+      update.setName(names[i]);
+      update.setValue(i);
+      jsonUpdates[i] = update;
+
+      // same as the RequestDelegator at startup
+      scheduler.addTask(ids[i]);
+      scheduler.getTagIndex().putName(names[i], ids[i]);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  /**
+   * Walks through all tags, so that every operation updates another tag
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int position;
+
+    int next(int size) {
+      position = position + 1 < size ? position + 1 : 0;
+      return position;
+    }
+  }
+
+  @Benchmark
+  public HttpStatus sendValueToServer(Cursor cursor) {
+    int i = cursor.next(tags);
+    return scheduler.sendValueToServer(ids[i], new ValueUpdate(i));
+  }
+
+  @Benchmark
+  public HttpStatus postHandlerById(Cursor cursor) {
+    return controller.postHandler(idStrings[cursor.next(tags)], "42");
+  }
+
+  @Benchmark
+  public HttpStatus postHandlerByName(Cursor cursor) {
+    return controller.postHandler(names[cursor.next(tags)], "42");
+  }
+
+  @Benchmark
+  public ResponseEntity<HttpStatus> postHandlerJson(Cursor cursor) {
+    return controller.postHandlerJson(jsonUpdates[cursor.next(tags)]);
+  }
+}
@@ -0,0 +1,249 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process HTTP server for the GET benchmarks, which serves a JSON payload
+ * of configurable size on every path. The responses can be delayed and a
+ * share of them can fail with 500, to simulate slow and unreliable endpoints.
+ * <p/>
+ * For every path the server measures the interval between two consecutive
+ * requests, which allows to compare the achieved with the configured poll
+ * frequency. The payload contains a per-path sequence number (<code>$.seq</code>),
+ * so that every poll yields a new value.
+ */
+final class StubHttpServer implements AutoCloseable {
+
+  /** Resolution of the drift histogram */
+  private static final int MAX_DRIFT_MILLIS = 10_000;
+
+  private final HttpServer server;
+
+  private final ExecutorService executor;
+
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+  private final Map<Long, Long> workerThreadIds = new ConcurrentHashMap<>();
+
+  private final byte[] padding;
+
+  private final long latencyMillis;
+
+  private final double errorRate;
+
+  private final Map<String, PathStatistics> paths = new ConcurrentHashMap<>();
+
+  private final LongAdder requests = new LongAdder();
+
+  private final LongAdder errors = new LongAdder();
+
+  /** Expected interval between two requests of the same path, used for the drift */
+  private volatile long expectedInterval = -1;
+
+  private final AtomicLongArray driftHistogram = new AtomicLongArray(MAX_DRIFT_MILLIS + 1);
+
+  private final AtomicLong maxDrift = new AtomicLong();
+
+  /**
+   * @param payloadSize   Approximate size of the JSON payload in bytes
+   * @param latencyMillis Delay of every response in milliseconds
+   * @param errorRate     Share of the requests (0 - 1), which are answered with 500
+   * @param threads       Number of threads serving the requests
+   */
+  StubHttpServer(int payloadSize, long latencyMillis, double errorRate, int threads) throws IOException {
+    this.latencyMillis = latencyMillis;
+    this.errorRate = errorRate;
+
+    char[] filler = new char[Math.max(0, payloadSize - 64)];
+    Arrays.fill(filler, 'x');
+    this.padding = new String(filler).getBytes(StandardCharsets.UTF_8);
+
+    AtomicInteger threadNumber = new AtomicInteger(1);
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(() -> {
+        workerThreadIds.put(Thread.currentThread().getId(), threadBean.getCurrentThreadCpuTime());
+        runnable.run();
+      }, "stub-http-" + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(executor);
+    this.server.start();
+  }
+
+  /**
+   * @param path path of the resource, e.g. <code>/resource/1</code>
+   * @return URL of the resource on this server
+   */
+  String url(String path) {
+    return "http://localhost:" + server.getAddress().getPort() + path;
+  }
+
+  /**
+   * Starts recording the deviation of the request intervals from the given interval
+   *
+   * @param intervalMillis the configured poll interval
+   */
+  void expectInterval(long intervalMillis) {
+    expectedInterval = intervalMillis;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    long now = System.currentTimeMillis();
+    requests.increment();
+    long sequence = paths.computeIfAbsent(exchange.getRequestURI().getPath(), p -> new PathStatistics()).record(now);
+
+    try {
+      if (latencyMillis > 0) {
+        Thread.sleep(latencyMillis);
+      }
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        errors.increment();
+        exchange.sendResponseHeaders(500, -1);
+        return;
+      }
+
+      byte[] head = ("{\"seq\": " + sequence + ", \"time\": " + now + ", \"padding\": \"").getBytes(StandardCharsets.UTF_8);
+      byte[] tail = "\"}".getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, head.length + padding.length + tail.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(head);
+        body.write(padding);
+        body.write(tail);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  long getRequests() {
+    return requests.sum();
+  }
+
+  long getErrors() {
+    return errors.sum();
+  }
+
+  /**
+   * @return number of distinct paths requested
+   */
+  int getPaths() {
+    return paths.size();
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the deviation of the request interval from the expected interval in milliseconds
+   */
+  long getDriftPercentile(double percentile) {
+    long total = 0;
+    for (int i = 0; i <= MAX_DRIFT_MILLIS; i++) {
+      total += driftHistogram.get(i);
+    }
+    long threshold = (long) Math.ceil(total * percentile / 100);
+    long count = 0;
+    for (int i = 0; i <= MAX_DRIFT_MILLIS; i++) {
+      count += driftHistogram.get(i);
+      if (count >= threshold && count > 0) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  long getMaxDrift() {
+    return maxDrift.get();
+  }
+
+  /**
+   * @return CPU time in nanoseconds consumed by the server threads, which has to be
+   *         subtracted from the process CPU time to get the CPU time of the client
+   */
+  long getCpuTime() {
+    long cpuTime = 0;
+    for (Map.Entry<Long, Long> worker : workerThreadIds.entrySet()) {
+      long threadCpuTime = threadBean.getThreadCpuTime(worker.getKey());
+      if (threadCpuTime > 0) {
+        cpuTime += threadCpuTime - worker.getValue();
+      }
+    }
+    return cpuTime;
+  }
+
+  /**
+   * Forgets all statistics, e.g. after the warm-up phase
+   */
+  void reset() {
+    requests.reset();
+    errors.reset();
+    for (int i = 0; i <= MAX_DRIFT_MILLIS; i++) {
+      driftHistogram.set(i, 0);
+    }
+    maxDrift.set(0);
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private class PathStatistics {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong lastRequest = new AtomicLong(-1);
+
+    long record(long now) {
+      long previous = lastRequest.getAndSet(now);
+      long interval = expectedInterval;
+      if (previous >= 0 && interval > 0) {
+        long drift = Math.abs(now - previous - interval);
+        driftHistogram.incrementAndGet((int) Math.min(drift, MAX_DRIFT_MILLIS));
+        maxDrift.accumulateAndGet(drift, Math::max);
+      }
+      return sequence.incrementAndGet();
+    }
+  }
+}
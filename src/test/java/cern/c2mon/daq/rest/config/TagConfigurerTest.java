@@ -16,9 +16,12 @@
  *****************************************************************************/
 package cern.c2mon.daq.rest.config;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.easymock.EasyMock;
 import org.junit.Before;
@@ -197,4 +200,89 @@ public class TagConfigurerTest {
     EasyMock.verify(configurationService);
     EasyMock.reset(configurationService);
   }
+
+  @Test
+  public void testCreateTags() {
+    assertFalse(tc.createTags(Collections.emptyList()));
+
+    RestTagUpdate update1 = new RestTagUpdate();
+    update1.setName("tagName1");
+    RestTagUpdate update2 = new RestTagUpdate();
+    update2.setName("tagName2");
+    update2.setValue(123);
+    RestTagUpdate invalidUpdate = new RestTagUpdate();
+
+    // Successful create with a single configuration request
+    ConfigurationReport report = new ConfigurationReport();
+    report.setStatus(Status.OK);
+    EasyMock.expect(configurationService.createDataTags("E_test",
+        Arrays.asList(tc.createConfiguration(update1), tc.createConfiguration(update2)))).andReturn(report);
+    EasyMock.replay(configurationService);
+    assertTrue(tc.createTags(Arrays.asList(update1, invalidUpdate, update2)));
+    EasyMock.verify(configurationService);
+    EasyMock.reset(configurationService);
+
+    // Failure in create
+    report = new ConfigurationReport();
+    report.setStatus(Status.FAILURE);
+    EasyMock.expect(configurationService.createDataTags("E_test",
+        Arrays.asList(tc.createConfiguration(update1), tc.createConfiguration(update2)))).andReturn(report);
+    EasyMock.replay(configurationService);
+    assertFalse(tc.createTags(Arrays.asList(update1, update2)));
+    EasyMock.verify(configurationService);
+    EasyMock.reset(configurationService);
+  }
+
+  @Test
+  public void testRequestTagsAreDeduplicatedAndBatched() {
+    RestTagUpdate update1 = new RestTagUpdate();
+    update1.setName("tagName1");
+    RestTagUpdate update2 = new RestTagUpdate();
+    update2.setName("tagName2");
+
+    // concurrent requests for the same name result in a single creation
+    ConfigurationReport report = new ConfigurationReport();
+    report.setStatus(Status.OK);
+    EasyMock.expect(configurationService.createDataTags("E_test",
+        Arrays.asList(tc.createConfiguration(update1), tc.createConfiguration(update2)))).andReturn(report).once();
+    EasyMock.replay(configurationService);
+
+    tc.setBatchWindow(200);
+    CompletableFuture<Boolean> result1 = tc.requestTag(update1);
+    CompletableFuture<Boolean> result2 = tc.requestTag(update1);
+    CompletableFuture<Boolean> result3 = tc.requestTags(Arrays.asList(update2, update1));
+
+    assertTrue(result1.join());
+    assertTrue(result2.join());
+    assertTrue(result3.join());
+    EasyMock.verify(configurationService);
+    tc.shutdown();
+  }
+
+  @Test
+  public void testFailedBatchIsRetriedTagByTag() {
+    RestTagUpdate update1 = new RestTagUpdate();
+    update1.setName("tagName1");
+    RestTagUpdate update2 = new RestTagUpdate();
+    update2.setName("tagName2");
+
+    ConfigurationReport failure = new ConfigurationReport();
+    failure.setStatus(Status.FAILURE);
+    ConfigurationReport success = new ConfigurationReport();
+    success.setStatus(Status.OK);
+    EasyMock.expect(configurationService.createDataTags("E_test",
+        Arrays.asList(tc.createConfiguration(update1), tc.createConfiguration(update2)))).andReturn(failure).once();
+    EasyMock.expect(configurationService.createDataTag("E_test", tc.createConfiguration(update1))).andReturn(failure).once();
+    EasyMock.expect(configurationService.createDataTag("E_test", tc.createConfiguration(update2))).andReturn(success).once();
+    EasyMock.replay(configurationService);
+
+    CompletableFuture<Boolean> result1 = tc.requestTag(update1);
+    CompletableFuture<Boolean> result2 = tc.requestTag(update2);
+
+    // only the rejected tag fails
+    assertFalse(result1.join());
+    assertTrue(result2.join());
+    EasyMock.verify(configurationService);
+    tc.shutdown();
+  }
 }
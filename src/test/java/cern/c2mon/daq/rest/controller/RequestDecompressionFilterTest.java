@@ -0,0 +1,119 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RequestDecompressionFilterTest {
+
+  private static final String BODY = "[{\"name\": \"rack/XYZ/temperature\", \"value\": 23}]";
+
+  private final RestDaqProperties.Decompression properties = new RestDaqProperties.Decompression();
+
+  @Test
+  public void gzipBodyIsDecompressed() throws Exception {
+    HttpServletRequest request = filter("gzip", gzip(BODY.getBytes(StandardCharsets.UTF_8)));
+
+    assertNull(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(-1, request.getContentLength());
+    assertEquals(BODY, StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void zlibAndRawDeflateBodiesAreDecompressed() throws Exception {
+    HttpServletRequest zlib = filter("deflate", deflate(BODY.getBytes(StandardCharsets.UTF_8), false));
+    assertEquals(BODY, StreamUtils.copyToString(zlib.getInputStream(), StandardCharsets.UTF_8));
+
+    HttpServletRequest raw = filter("deflate", deflate(BODY.getBytes(StandardCharsets.UTF_8), true));
+    assertEquals(BODY, StreamUtils.copyToString(raw.getReader()));
+  }
+
+  @Test(expected = DecompressedSizeExceededException.class)
+  public void decompressedSizeIsLimited() throws Exception {
+    properties.setMaxSize(1_000);
+    properties.setMaxRatio(Integer.MAX_VALUE);
+    HttpServletRequest request = filter("gzip", gzip(new byte[1_001]));
+
+    StreamUtils.copyToByteArray(request.getInputStream());
+  }
+
+  @Test(expected = DecompressedSizeExceededException.class)
+  public void compressionRatioIsLimited() throws Exception {
+    HttpServletRequest request = filter("gzip", gzip(new byte[10_000_000]));
+
+    StreamUtils.copyToByteArray(request.getInputStream());
+  }
+
+  @Test
+  public void unsupportedEncodingIsRejected() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/updates");
+    request.addHeader(HttpHeaders.CONTENT_ENCODING, "br");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    new RequestDecompressionFilter(properties).doFilter(request, response, (req, res) -> {
+      throw new IllegalStateException("Request must not be forwarded");
+    });
+
+    assertEquals(415, response.getStatus());
+  }
+
+  private HttpServletRequest filter(String encoding, byte[] body) throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/updates");
+    request.addHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+    request.setContent(body);
+
+    AtomicReference<HttpServletRequest> forwarded = new AtomicReference<>();
+    new RequestDecompressionFilter(properties).doFilter(request, new MockHttpServletResponse(),
+        (req, res) -> forwarded.set((HttpServletRequest) req));
+    return forwarded.get();
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(data);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+      deflate.write(data);
+    }
+    return out.toByteArray();
+  }
+}
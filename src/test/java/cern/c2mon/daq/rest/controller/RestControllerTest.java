@@ -0,0 +1,43 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.Assert.assertEquals;
+
+public class RestControllerTest {
+
+  @Test
+  public void bufferedUpdateIsAnsweredWithItsStatus() {
+    assertEquals(HttpStatus.ACCEPTED, RestController.responseStatus(HttpStatus.ACCEPTED));
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, RestController.responseStatus(HttpStatus.TOO_MANY_REQUESTS));
+    assertEquals(HttpStatus.OK, RestController.responseStatus(HttpStatus.OK));
+    assertEquals(HttpStatus.OK, RestController.responseStatus(HttpStatus.BAD_REQUEST));
+  }
+
+  @Test
+  public void batchIsAnsweredWithTheMostSevereBufferStatus() {
+    assertEquals(HttpStatus.OK, RestController.responseStatus(Arrays.asList(HttpStatus.OK, HttpStatus.BAD_REQUEST)));
+    assertEquals(HttpStatus.ACCEPTED, RestController.responseStatus(Arrays.asList(HttpStatus.OK, HttpStatus.ACCEPTED)));
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+        RestController.responseStatus(Arrays.asList(HttpStatus.ACCEPTED, HttpStatus.TOO_MANY_REQUESTS, HttpStatus.OK)));
+  }
+}
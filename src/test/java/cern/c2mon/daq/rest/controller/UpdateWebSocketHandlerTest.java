@@ -0,0 +1,143 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cern.c2mon.daq.common.IEquipmentMessageSender;
+import cern.c2mon.daq.rest.address.RestAddressFactory;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.scheduling.PostScheduler;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import cern.c2mon.shared.common.process.IEquipmentConfiguration;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.junit.Assert.assertEquals;
+
+public class UpdateWebSocketHandlerTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private IEquipmentMessageSender sender;
+
+  private IEquipmentConfiguration configuration;
+
+  private PostScheduler scheduler;
+
+  private UpdateWebSocketHandler handler;
+
+  private WebSocketSession session;
+
+  private Capture<WebSocketMessage<?>> acks;
+
+  @Before
+  public void setUp() throws Exception {
+    sender = EasyMock.createMock(IEquipmentMessageSender.class);
+    configuration = EasyMock.createMock(IEquipmentConfiguration.class);
+    scheduler = new PostScheduler(sender, configuration);
+
+    RestController restController = new RestController();
+    restController.setPostScheduler(scheduler);
+
+    RestDaqProperties.Websocket properties = new RestDaqProperties.Websocket();
+    properties.setAckBatchSize(3);
+    properties.setAckInterval(50);
+    handler = new UpdateWebSocketHandler(restController, objectMapper, properties);
+
+    acks = EasyMock.newCapture(CaptureType.ALL);
+    session = EasyMock.createNiceMock(WebSocketSession.class);
+    EasyMock.expect(session.getId()).andReturn("session").anyTimes();
+    EasyMock.expect(session.isOpen()).andReturn(true).anyTimes();
+    session.sendMessage(capture(acks));
+    EasyMock.expectLastCall().anyTimes();
+  }
+
+  @After
+  public void tearDown() {
+    handler.destroy();
+    scheduler.shutdown();
+  }
+
+  /**
+   * JSON and compact updates of one message are processed in order and acknowledged in batches
+   */
+  @Test
+  public void updatesAreAcknowledgedInBatches() throws Exception {
+    Map<String, String> map = new HashMap<>();
+    map.put("mode", "POST");
+    ISourceDataTag tag = EasyMock.createNiceMock(ISourceDataTag.class);
+    EasyMock.expect(tag.getHardwareAddress()).andReturn(RestAddressFactory.createHardwareAddress(map)).anyTimes();
+    EasyMock.expect(tag.getCurrentValue()).andReturn(new SourceDataTagValue()).anyTimes();
+    EasyMock.expect(configuration.getSourceDataTag(1L)).andReturn(tag).anyTimes();
+
+    Capture<ValueUpdate> values = EasyMock.newCapture(CaptureType.ALL);
+    EasyMock.expect(sender.update(eq(1L), capture(values))).andReturn(true).times(2);
+    EasyMock.replay(sender, configuration, tag, session);
+
+    scheduler.addTask(1L);
+    scheduler.getTagIndex().put(new SourceDataTag(1L, "tag1", false));
+
+    handler.afterConnectionEstablished(session);
+    handler.handleTextMessage(session, new TextMessage("[1, 42, 1000]\n{\"name\": \"tag1\", \"value\": 7}\n[2, 1]\nfoo"));
+
+    // the first batch is full and acknowledged immediately, the rest once the interval has elapsed
+    Thread.sleep(500);
+    handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+    EasyMock.verify(sender, session);
+    assertEquals(2, acks.getValues().size());
+
+    UpdateAck first = readAck(acks.getValues().get(0));
+    assertEquals(3, first.getLastSequence());
+    assertEquals(2, first.getAccepted());
+    assertEquals(1, first.getRejected());
+    assertEquals(3, first.getRejections().get(0).getSequence());
+    assertEquals(HttpStatus.BAD_REQUEST, first.getRejections().get(0).getStatus());
+
+    UpdateAck second = readAck(acks.getValues().get(1));
+    assertEquals(4, second.getLastSequence());
+    assertEquals(0, second.getAccepted());
+    assertEquals(1, second.getRejected());
+
+    assertEquals(42, values.getValues().get(0).getValue());
+    assertEquals(7, values.getValues().get(1).getValue());
+    assertEquals(0, handler.getSessionCount());
+  }
+
+  private UpdateAck readAck(WebSocketMessage<?> message) throws Exception {
+    return objectMapper.readValue(((TextMessage) message).getPayload(), UpdateAck.class);
+  }
+}
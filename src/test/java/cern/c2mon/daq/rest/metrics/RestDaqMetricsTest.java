@@ -0,0 +1,87 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import cern.c2mon.daq.rest.metrics.RestDaqMetrics.GetOutcome;
+import cern.c2mon.daq.rest.webaccess.RESTConnector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RestDaqMetricsTest {
+
+  private SimpleMeterRegistry registry;
+
+  private RestDaqMetrics metrics;
+
+  @Before
+  public void setUp() {
+    registry = new SimpleMeterRegistry();
+    metrics = new RestDaqMetrics(registry);
+  }
+
+  @Test
+  public void postRequestsAreCountedPerEndpointAndStatus() {
+    metrics.postRequest("/update", HttpStatus.OK);
+    metrics.postRequest("/update", HttpStatus.OK);
+    metrics.postRequest("/update", HttpStatus.BAD_REQUEST);
+    metrics.postRequest("/tags", HttpStatus.OK);
+
+    assertEquals(2.0, registry.get("c2mon.daq.rest.post.requests").tags("endpoint", "/update", "status", "OK").counter().count(), 0.0);
+    assertEquals(1.0, registry.get("c2mon.daq.rest.post.requests").tags("endpoint", "/update", "status", "BAD_REQUEST").counter().count(), 0.0);
+    assertEquals(1.0, registry.get("c2mon.daq.rest.post.requests").tags("endpoint", "/tags", "status", "OK").counter().count(), 0.0);
+  }
+
+  @Test
+  public void getRequestsAreTimedPerHostAndOutcome() {
+    metrics.getRequest("localhost:8080", GetOutcome.SUCCESS, TimeUnit.MILLISECONDS.toNanos(20));
+    metrics.getRequest("localhost:8080", GetOutcome.NOT_MODIFIED, TimeUnit.MILLISECONDS.toNanos(5));
+    metrics.getRequest("localhost:8080", GetOutcome.SUCCESS, TimeUnit.MILLISECONDS.toNanos(40));
+
+    assertEquals(2, registry.get("c2mon.daq.rest.get.requests").tags("host", "localhost:8080", "outcome", "SUCCESS").timer().count());
+    assertEquals(60.0, registry.get("c2mon.daq.rest.get.requests").tags("outcome", "SUCCESS").timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+    assertEquals(1, registry.get("c2mon.daq.rest.get.requests").tags("outcome", "NOT_MODIFIED").timer().count());
+  }
+
+  @Test
+  public void connectionPoolIsPublished() {
+    assertEquals(RESTConnector.getPoolStats().getMax(),
+        registry.get("c2mon.daq.rest.http.connections").tags("state", "max").gauge().value(), 0.0);
+    assertEquals(0.0, registry.get("c2mon.daq.rest.http.connections").tags("state", "leased").gauge().value(), 0.0);
+    assertEquals(4, registry.find("c2mon.daq.rest.http.connections").gauges().size());
+  }
+
+  @Test
+  public void removedGaugeIsNoLongerPublished() {
+    int[] size = {3};
+    Meter gauge = metrics.gauge("scheduler.tasks", "test", Tags.of("scheduler", "Test"), size, s -> s[0]);
+    assertEquals(3.0, registry.get("c2mon.daq.rest.scheduler.tasks").gauge().value(), 0.0);
+
+    metrics.remove(gauge);
+    assertNull(registry.find("c2mon.daq.rest.scheduler.tasks").gauge());
+  }
+}
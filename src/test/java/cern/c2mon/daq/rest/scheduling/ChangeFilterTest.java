@@ -0,0 +1,96 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import org.junit.Test;
+
+import cern.c2mon.shared.common.datatag.DataTagDeadband;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFilterTest {
+
+  private static final long HEARTBEAT = 60_000;
+
+  @Test
+  public void testUnchangedValueIsSuppressed() {
+    ChangeFilter filter = new ChangeFilter(true, DataTagDeadband.DEADBAND_NONE, 0f, HEARTBEAT);
+
+    assertTrue(filter.accept("foo", 0));
+    assertFalse(filter.accept("foo", 1_000));
+    assertTrue(filter.accept("bar", 2_000));
+    assertTrue(filter.accept(1.0, 3_000));
+    assertTrue(filter.accept(1.1, 4_000));
+  }
+
+  @Test
+  public void testAbsoluteDeadband() {
+    ChangeFilter filter = new ChangeFilter(true, DataTagDeadband.DEADBAND_EQUIPMENT_ABSOLUTE, 0.5f, HEARTBEAT);
+
+    assertTrue(filter.accept(10.0, 0));
+    assertFalse(filter.accept(10.4, 1_000));
+    assertFalse(filter.accept(9.6, 2_000));
+    assertTrue(filter.accept(10.5, 3_000));
+    // the deadband is relative to the last sent value
+    assertFalse(filter.accept(10.9, 4_000));
+  }
+
+  @Test
+  public void testRelativeDeadband() {
+    ChangeFilter filter = new ChangeFilter(true, DataTagDeadband.DEADBAND_EQUIPMENT_RELATIVE, 10f, HEARTBEAT);
+
+    assertTrue(filter.accept(200, 0));
+    assertFalse(filter.accept(219, 1_000));
+    assertTrue(filter.accept(220, 2_000));
+  }
+
+  @Test
+  public void testHeartbeat() {
+    ChangeFilter filter = new ChangeFilter(true, DataTagDeadband.DEADBAND_NONE, 0f, HEARTBEAT);
+
+    assertNull("No heartbeat without value", filter.heartbeat(HEARTBEAT));
+    assertTrue(filter.accept(42, 0));
+    assertNull(filter.heartbeat(HEARTBEAT - 1));
+    assertEquals(42, filter.heartbeat(HEARTBEAT));
+    assertFalse(filter.accept(42, HEARTBEAT + 1_000));
+    assertTrue("Unchanged value must be sent after the heartbeat interval", filter.accept(42, 2 * HEARTBEAT));
+  }
+
+  @Test
+  public void testReset() {
+    ChangeFilter filter = new ChangeFilter(true, DataTagDeadband.DEADBAND_NONE, 0f, HEARTBEAT);
+
+    assertTrue(filter.accept(42, 0));
+    filter.reset();
+    assertTrue("Value must be sent after an invalidation", filter.accept(42, 1_000));
+  }
+
+  @Test
+  public void testDisabled() {
+    ChangeFilter filter = new ChangeFilter(false, DataTagDeadband.DEADBAND_NONE, 0f, HEARTBEAT);
+
+    assertTrue(filter.accept(42, 0));
+    assertTrue(filter.accept(42, 1_000));
+    assertEquals("Unchanged resource must be sent with every poll", 42, filter.heartbeat(2_000));
+
+    filter.reset();
+    assertNull("No value after an invalidation", filter.heartbeat(3_000));
+  }
+}
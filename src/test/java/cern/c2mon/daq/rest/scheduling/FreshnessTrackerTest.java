@@ -0,0 +1,84 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FreshnessTrackerTest {
+
+  private final List<Long> expired = new ArrayList<>();
+
+  private final FreshnessTracker tracker = new FreshnessTracker(expired::add);
+
+  @Test
+  public void testExpiredOnlyOnce() throws InterruptedException {
+    tracker.track(1L, 50);
+    tracker.track(2L, 10_000);
+
+    tracker.run();
+    assertTrue(expired.isEmpty());
+
+    Thread.sleep(100);
+    tracker.run();
+    tracker.run();
+    assertEquals(1, expired.size());
+    assertEquals(Long.valueOf(1L), expired.get(0));
+  }
+
+  @Test
+  public void testTouchRenewsFreshness() throws InterruptedException {
+    tracker.track(1L, 200);
+
+    Thread.sleep(120);
+    assertTrue(tracker.touch(1L));
+    Thread.sleep(120);
+    tracker.run();
+    assertTrue("Tag must not expire after an update", expired.isEmpty());
+
+    Thread.sleep(150);
+    tracker.run();
+    assertEquals(1, expired.size());
+
+    // a new value re-arms the expiration
+    assertTrue(tracker.touch(1L));
+    Thread.sleep(250);
+    tracker.run();
+    assertEquals(2, expired.size());
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException {
+    ScheduledTask handle = tracker.track(1L, 10);
+    assertEquals(1, tracker.size());
+
+    assertTrue(handle.cancel());
+    assertFalse(handle.cancel());
+    assertFalse(tracker.touch(1L));
+    assertEquals(0, tracker.size());
+
+    Thread.sleep(50);
+    tracker.run();
+    assertTrue(expired.isEmpty());
+  }
+}
@@ -0,0 +1,337 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+
+import cern.c2mon.daq.common.IEquipmentMessageSender;
+import cern.c2mon.daq.rest.address.RestAddressFactory;
+import cern.c2mon.daq.rest.address.RestGetAddress;
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+import cern.c2mon.daq.rest.webaccess.RESTConnector;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagQuality;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import cern.c2mon.shared.common.process.IEquipmentConfiguration;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class GetSchedulerTest {
+
+  private static final String URL = "http://www.testaddress.org/metrics";
+
+  private static final String OTHER_URL = "http://www.testaddress.org/status";
+
+  private IEquipmentMessageSender equipmentMessageSender;
+
+  private IEquipmentConfiguration equipmentConfiguration;
+
+  private GetScheduler scheduler;
+
+  private MockRestServiceServer mockServer;
+
+  @Before
+  public void setUp() {
+    equipmentMessageSender = EasyMock.createMock(IEquipmentMessageSender.class);
+    equipmentConfiguration = EasyMock.createMock(IEquipmentConfiguration.class);
+    scheduler = new GetScheduler(equipmentMessageSender, equipmentConfiguration);
+    mockServer = MockRestServiceServer.createServer(RESTConnector.getRestTemplate());
+  }
+
+  @After
+  public void afterTest() {
+    scheduler.shutdown();
+  }
+
+  /**
+   * Tags with the same url and frequency must share one request, but extract their own values
+   */
+  @Test
+  public void tagsWithSameUrlShareOneRequest() throws InterruptedException {
+    String jsonMessage = "{\"id\": 1701, \"name\": \"Max Mustermann\", \"age\": 31}";
+    mockServer.expect(once(), requestTo(URL)).andExpect(method(HttpMethod.GET))
+        .andRespond(withSuccess(jsonMessage, MediaType.APPLICATION_JSON));
+
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(createTag(1L, "Long", "$.id"));
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(2L)).andReturn(createTag(2L, "String", "$.name"));
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(3L)).andReturn(createTag(3L, "String", null));
+
+    Capture<ValueUpdate> value1 = EasyMock.newCapture();
+    Capture<ValueUpdate> value2 = EasyMock.newCapture();
+    Capture<ValueUpdate> value3 = EasyMock.newCapture();
+    EasyMock.expect(equipmentMessageSender.update(eq(1L), capture(value1))).andReturn(true);
+    EasyMock.expect(equipmentMessageSender.update(eq(2L), capture(value2))).andReturn(true);
+    EasyMock.expect(equipmentMessageSender.update(eq(3L), capture(value3))).andReturn(true);
+    EasyMock.replay(equipmentConfiguration, equipmentMessageSender);
+
+    scheduler.addTask(1L);
+    scheduler.addTask(2L);
+    scheduler.addTask(3L);
+
+    Thread.sleep(1_500);
+    scheduler.removeTask(1L);
+    scheduler.removeTask(2L);
+    scheduler.removeTask(3L);
+
+    mockServer.verify();
+    EasyMock.verify(equipmentConfiguration, equipmentMessageSender);
+
+    assertEquals(1701L, value1.getValue().getValue());
+    assertEquals("Max Mustermann", value2.getValue().getValue());
+    assertEquals(jsonMessage, value3.getValue().getValue());
+  }
+
+  /**
+   * An unchanged resource must not be parsed again, but its last value must still be sent with every poll
+   */
+  @Test
+  public void notModifiedResourceIsSentAgain() throws InterruptedException {
+    expectNotModifiedResource();
+
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(createTag(1L, "Long", "$.id"));
+    Capture<ValueUpdate> values = EasyMock.newCapture(CaptureType.ALL);
+    EasyMock.expect(equipmentMessageSender.update(eq(1L), capture(values))).andReturn(true).times(2);
+    EasyMock.replay(equipmentConfiguration, equipmentMessageSender);
+
+    scheduler.addTask(1L);
+
+    Thread.sleep(2_500);
+    scheduler.removeTask(1L);
+
+    mockServer.verify();
+    EasyMock.verify(equipmentConfiguration, equipmentMessageSender);
+    assertEquals(1701L, values.getValues().get(0).getValue());
+    assertEquals(1701L, values.getValues().get(1).getValue());
+  }
+
+  /**
+   * With the change filter an unchanged resource must only be sent again after the heartbeat interval
+   */
+  @Test
+  public void notModifiedResourceIsFiltered() throws InterruptedException {
+    expectNotModifiedResource();
+
+    RestDaqProperties properties = new RestDaqProperties();
+    properties.getGet().setFilterUnchangedValues(true);
+    GetScheduler filteringScheduler = new GetScheduler(equipmentMessageSender, equipmentConfiguration, properties);
+
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(createTag(1L, "Long", "$.id"));
+    Capture<ValueUpdate> value = EasyMock.newCapture();
+    EasyMock.expect(equipmentMessageSender.update(eq(1L), capture(value))).andReturn(true).once();
+    EasyMock.replay(equipmentConfiguration, equipmentMessageSender);
+
+    try {
+      filteringScheduler.addTask(1L);
+      Thread.sleep(2_500);
+      filteringScheduler.removeTask(1L);
+    } finally {
+      filteringScheduler.shutdown();
+    }
+
+    mockServer.verify();
+    EasyMock.verify(equipmentConfiguration, equipmentMessageSender);
+    assertEquals(1701L, value.getValue().getValue());
+  }
+
+  private void expectNotModifiedResource() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag("\"v1\"");
+    mockServer.expect(once(), requestTo(URL)).andExpect(method(HttpMethod.GET))
+        .andRespond(withSuccess("{\"id\": 1701}", MediaType.APPLICATION_JSON).headers(headers));
+    mockServer.expect(once(), requestTo(URL)).andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+        .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+  }
+
+  /**
+   * A failing host must be suspended after a few failures, instead of being polled with the full frequency
+   */
+  @Test
+  public void failingHostIsSuspended() throws InterruptedException {
+    mockServer.expect(times(3), requestTo(URL)).andRespond(withServerError());
+
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(createTag(1L, "Long", "$.id"));
+    equipmentMessageSender.update(eq(1L), anyObject(SourceDataTagQuality.class));
+    EasyMock.expectLastCall().times(3);
+    EasyMock.replay(equipmentConfiguration, equipmentMessageSender);
+
+    scheduler.addTask(1L);
+
+    // the first probe is only sent after the initial backoff of 5 seconds
+    Thread.sleep(5_500);
+    scheduler.removeTask(1L);
+
+    mockServer.verify();
+    EasyMock.verify(equipmentConfiguration, equipmentMessageSender);
+  }
+
+  /**
+   * A tag, which is added again with another url, must only be polled from the new url
+   */
+  @Test
+  public void reAddedTagLeavesPreviousGroup() throws InterruptedException {
+    mockServer.expect(once(), requestTo(OTHER_URL)).andExpect(method(HttpMethod.GET))
+        .andRespond(withSuccess("{\"id\": 1701}", MediaType.APPLICATION_JSON));
+
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(createTag(1L, URL, "Long", "$.id"));
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(createTag(1L, OTHER_URL, "Long", "$.id"));
+    Capture<ValueUpdate> value = EasyMock.newCapture();
+    EasyMock.expect(equipmentMessageSender.update(eq(1L), capture(value))).andReturn(true).once();
+    EasyMock.replay(equipmentConfiguration, equipmentMessageSender);
+
+    scheduler.addTask(1L);
+    scheduler.addTask(1L);
+
+    Thread.sleep(1_500);
+    scheduler.removeTask(1L);
+
+    mockServer.verify();
+    EasyMock.verify(equipmentConfiguration, equipmentMessageSender);
+    assertEquals(1701L, value.getValue().getValue());
+  }
+
+  /**
+   * An unchanged value must be sent again after the request failed, since the tag has been invalidated meanwhile
+   */
+  @Test
+  public void unchangedValueIsSentAfterFailedRequest() throws InterruptedException {
+    mockServer.expect(once(), requestTo(URL)).andRespond(withSuccess("{\"id\": 1701}", MediaType.APPLICATION_JSON));
+    mockServer.expect(once(), requestTo(URL)).andRespond(withServerError());
+    mockServer.expect(once(), requestTo(URL)).andRespond(withSuccess("{\"id\": 1701}", MediaType.APPLICATION_JSON));
+
+    assertUnchangedValueIsSentAfterInvalidation();
+  }
+
+  /**
+   * An unchanged value must be sent again after its extraction failed, since the tag has been invalidated meanwhile
+   */
+  @Test
+  public void unchangedValueIsSentAfterFailedExtraction() throws InterruptedException {
+    mockServer.expect(once(), requestTo(URL)).andRespond(withSuccess("{\"id\": 1701}", MediaType.APPLICATION_JSON));
+    mockServer.expect(once(), requestTo(URL)).andRespond(withSuccess("{\"name\": \"Max\"}", MediaType.APPLICATION_JSON));
+    mockServer.expect(once(), requestTo(URL)).andRespond(withSuccess("{\"id\": 1701}", MediaType.APPLICATION_JSON));
+
+    assertUnchangedValueIsSentAfterInvalidation();
+  }
+
+  private void assertUnchangedValueIsSentAfterInvalidation() throws InterruptedException {
+    RestDaqProperties properties = new RestDaqProperties();
+    properties.getGet().setFilterUnchangedValues(true);
+    properties.getGet().setPhaseSpread(GetScheduler.PhaseSpread.NONE);
+    GetScheduler filteringScheduler = new GetScheduler(equipmentMessageSender, equipmentConfiguration, properties);
+
+    EasyMock.expect(equipmentConfiguration.getSourceDataTag(1L)).andReturn(createTag(1L, "Long", "$.id"));
+    Capture<ValueUpdate> values = EasyMock.newCapture(CaptureType.ALL);
+    EasyMock.expect(equipmentMessageSender.update(eq(1L), capture(values))).andReturn(true).times(2);
+    equipmentMessageSender.update(eq(1L), anyObject(SourceDataTagQuality.class));
+    EasyMock.expectLastCall().once();
+    EasyMock.replay(equipmentConfiguration, equipmentMessageSender);
+
+    try {
+      filteringScheduler.addTask(1L);
+      // the first request is sent after one period
+      Thread.sleep(3_500);
+      filteringScheduler.removeTask(1L);
+    } finally {
+      filteringScheduler.shutdown();
+    }
+
+    mockServer.verify();
+    EasyMock.verify(equipmentConfiguration, equipmentMessageSender);
+    assertEquals(1701L, values.getValues().get(1).getValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidJsonPathExpression() {
+    Map<String, String> map = new HashMap<>();
+    map.put("mode", "GET");
+    map.put("url", URL);
+    map.put("jsonPathExpression", "$['name");
+    RestAddressFactory.createHardwareAddress(map);
+  }
+
+  /**
+   * The compiled expression is transient and must be restored after deserialization
+   */
+  @Test
+  public void jsonPathIsCompiledAfterDeserialization() throws Exception {
+    Map<String, String> map = new HashMap<>();
+    map.put("mode", "GET");
+    map.put("url", URL);
+    map.put("jsonPathExpression", "$.name");
+    RestGetAddress address = (RestGetAddress) RestAddressFactory.createHardwareAddress(map);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(address);
+    }
+    RestGetAddress copy;
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      copy = (RestGetAddress) in.readObject();
+    }
+
+    assertNotNull(copy.getJsonPath());
+    assertEquals("Max Mustermann", copy.getJsonPath().read("{\"name\": \"Max Mustermann\"}"));
+  }
+
+  private SourceDataTag createTag(Long id, String dataType, String jsonPathExpression) {
+    return createTag(id, URL, dataType, jsonPathExpression);
+  }
+
+  private SourceDataTag createTag(Long id, String url, String dataType, String jsonPathExpression) {
+    Map<String, String> map = new HashMap<>();
+    map.put("mode", "GET");
+    map.put("url", url);
+    map.put("getFrequency", "1");
+    if (jsonPathExpression != null) {
+      map.put("jsonPathExpression", jsonPathExpression);
+    }
+
+    SourceDataTag tag = new SourceDataTag(id, "tag" + id, false);
+    tag.setDataType(dataType);
+    tag.setHardwareAddress(RestAddressFactory.createHardwareAddress(map));
+    return tag;
+  }
+}
@@ -0,0 +1,113 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelSchedulingEngineTest {
+
+  private HashedWheelSchedulingEngine engine;
+
+  @Before
+  public void before() {
+    engine = new HashedWheelSchedulingEngine("test-wheel", 10, 8);
+  }
+
+  @After
+  public void after() {
+    engine.shutdown();
+  }
+
+  @Test
+  public void testSchedule() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+    long start = System.currentTimeMillis();
+
+    engine.schedule(latch::countDown, 200);
+
+    assertTrue("Task was not executed", latch.await(2, TimeUnit.SECONDS));
+    assertTrue("Task was executed too early", System.currentTimeMillis() - start >= 200);
+    assertEquals(0, engine.size());
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException {
+    AtomicInteger counter = new AtomicInteger();
+
+    ScheduledTask task = engine.schedule(counter::incrementAndGet, 100);
+    assertEquals(1, engine.size());
+    assertTrue(task.cancel());
+    assertFalse("Second cancel must not succeed", task.cancel());
+    assertEquals(0, engine.size());
+
+    Thread.sleep(300);
+    assertEquals(0, counter.get());
+  }
+
+  @Test
+  public void testScheduleAtFixedRate() throws InterruptedException {
+    AtomicInteger counter = new AtomicInteger();
+
+    ScheduledTask task = engine.scheduleAtFixedRate(counter::incrementAndGet, 50, 50);
+    Thread.sleep(530);
+    assertTrue(task.cancel());
+    int executions = counter.get();
+    assertTrue("Expected about 10 executions, but got " + executions, executions >= 8 && executions <= 11);
+
+    Thread.sleep(200);
+    assertEquals("Task executed after cancel", executions, counter.get());
+    assertEquals(0, engine.size());
+  }
+
+  @Test
+  public void testManyTasksWithCancellation() throws InterruptedException {
+    AtomicInteger counter = new AtomicInteger();
+    ScheduledTask[] tasks = new ScheduledTask[50_000];
+
+    // delays span several rotations of the wheel
+    for (int i = 0; i < tasks.length; i++) {
+      tasks[i] = engine.schedule(counter::incrementAndGet, 50 + (i % 200));
+    }
+    for (int i = 0; i < tasks.length; i += 2) {
+      tasks[i].cancel();
+    }
+
+    Thread.sleep(800);
+    assertEquals(tasks.length / 2, counter.get());
+    assertEquals(0, engine.size());
+  }
+
+  @Test
+  public void testFailingTaskDoesNotStopEngine() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(1);
+
+    engine.schedule(() -> { throw new IllegalStateException("Test exception"); }, 20);
+    engine.schedule(latch::countDown, 50);
+
+    assertTrue(latch.await(2, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,89 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import org.junit.Test;
+
+import cern.c2mon.daq.rest.scheduling.HostCircuitBreaker.Permit;
+import cern.c2mon.daq.rest.scheduling.HostCircuitBreaker.State;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HostCircuitBreakerTest {
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(3, 1_000, 8_000);
+
+    assertFalse(breaker.onFailure(0, false));
+    assertFalse(breaker.onFailure(100, false));
+    // a success resets the failure count
+    assertFalse(breaker.onSuccess());
+    assertFalse(breaker.onFailure(200, false));
+    assertFalse(breaker.onFailure(300, false));
+    assertTrue(breaker.onFailure(400, false));
+
+    assertEquals(State.OPEN, breaker.getState());
+    assertEquals(Permit.DENIED, breaker.acquire(1_399));
+    // late failures of requests sent before opening are ignored
+    assertFalse(breaker.onFailure(500, false));
+  }
+
+  @Test
+  public void testSingleProbeWithExponentialBackoff() {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(1, 1_000, 3_000);
+    assertTrue(breaker.onFailure(0, false));
+
+    assertEquals(Permit.PROBE, breaker.acquire(1_000));
+    assertEquals(Permit.DENIED, breaker.acquire(1_001));
+    breaker.onFailure(1_100, true);
+    assertEquals(2_000, breaker.getBackoff());
+    assertEquals(Permit.DENIED, breaker.acquire(3_099));
+
+    assertEquals(Permit.PROBE, breaker.acquire(3_100));
+    breaker.onFailure(3_200, true);
+    assertEquals(3_000, breaker.getBackoff());
+
+    assertEquals(Permit.PROBE, breaker.acquire(6_200));
+    assertTrue(breaker.onSuccess());
+    assertEquals(State.CLOSED, breaker.getState());
+    assertEquals(1_000, breaker.getBackoff());
+    assertEquals(Permit.GRANTED, breaker.acquire(6_300));
+  }
+
+  @Test
+  public void testSkippedProbeIsRetried() {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(1, 1_000, 3_000);
+    breaker.onFailure(0, false);
+
+    assertEquals(Permit.PROBE, breaker.acquire(1_000));
+    breaker.onSkipped(1_000);
+    assertEquals(State.OPEN, breaker.getState());
+    assertEquals(Permit.PROBE, breaker.acquire(1_001));
+  }
+
+  @Test
+  public void testDisabled() {
+    HostCircuitBreaker breaker = new HostCircuitBreaker(0, 1_000, 3_000);
+    for (int i = 0; i < 100; i++) {
+      assertFalse(breaker.onFailure(i, false));
+    }
+    assertEquals(Permit.GRANTED, breaker.acquire(100));
+  }
+}
@@ -0,0 +1,115 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cern.c2mon.daq.rest.scheduling.PendingUpdateBuffer.OverflowPolicy;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PendingUpdateBufferTest {
+
+  private final Map<String, Integer> dropped = new HashMap<>();
+
+  private PendingUpdateBuffer createBuffer(int capacity, int capacityPerTag, OverflowPolicy overflowPolicy) {
+    return new PendingUpdateBuffer(capacity, capacityPerTag, 1_000, overflowPolicy,
+        (reason, count) -> dropped.merge(reason, count, Integer::sum));
+  }
+
+  @Test
+  public void testDrainInOrderOfReception() {
+    PendingUpdateBuffer buffer = createBuffer(10, 10, OverflowPolicy.DROP_OLDEST);
+    assertTrue(buffer.add("a", new ValueUpdate(1), 0));
+    assertTrue(buffer.add("b", new ValueUpdate(2), 0));
+    assertTrue(buffer.add("a", new ValueUpdate(3), 0));
+    assertEquals(3, buffer.size());
+
+    assertEquals(2, buffer.drain("a", 100).size());
+    assertTrue(buffer.drain("a", 100).isEmpty());
+    assertEquals(1, buffer.size());
+    assertEquals(2, buffer.drain("b", 100).get(0).getValue());
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  public void testDropOldestPerTag() {
+    PendingUpdateBuffer buffer = createBuffer(10, 2, OverflowPolicy.DROP_OLDEST);
+    buffer.add("a", new ValueUpdate(1), 0);
+    buffer.add("a", new ValueUpdate(2), 0);
+    assertTrue(buffer.add("a", new ValueUpdate(3), 0));
+
+    assertEquals(Integer.valueOf(1), dropped.get(PendingUpdateBuffer.OVERFLOW));
+    assertEquals(2, buffer.drain("a", 0).get(0).getValue());
+  }
+
+  @Test
+  public void testDropOldestOfBuffer() {
+    PendingUpdateBuffer buffer = createBuffer(2, 10, OverflowPolicy.DROP_OLDEST);
+    buffer.add("a", new ValueUpdate(1), 0);
+    buffer.add("b", new ValueUpdate(2), 0);
+    assertTrue(buffer.add("c", new ValueUpdate(3), 0));
+
+    assertEquals(2, buffer.size());
+    assertTrue(buffer.drain("a", 0).isEmpty());
+    assertEquals(1, buffer.drain("c", 0).size());
+  }
+
+  @Test
+  public void testReject() {
+    PendingUpdateBuffer buffer = createBuffer(2, 1, OverflowPolicy.REJECT);
+    assertTrue(buffer.add("a", new ValueUpdate(1), 0));
+    assertFalse(buffer.add("a", new ValueUpdate(2), 0));
+    assertTrue(buffer.add("b", new ValueUpdate(3), 0));
+    assertFalse(buffer.add("c", new ValueUpdate(4), 0));
+
+    assertEquals(Integer.valueOf(2), dropped.get(PendingUpdateBuffer.OVERFLOW));
+    assertEquals(1, buffer.drain("a", 0).get(0).getValue());
+  }
+
+  @Test
+  public void testExpiry() {
+    PendingUpdateBuffer buffer = createBuffer(10, 10, OverflowPolicy.DROP_OLDEST);
+    buffer.add("a", new ValueUpdate(1), 0);
+    buffer.add("a", new ValueUpdate(2), 500);
+    buffer.add("b", new ValueUpdate(3), 600);
+
+    assertEquals(1, buffer.expire(1_000));
+    assertEquals(2, buffer.size());
+    // expired values are not replayed
+    assertEquals(1, buffer.drain("a", 1_400).size());
+    assertEquals(0, buffer.drain("b", 1_600).size());
+    assertEquals(Integer.valueOf(2), dropped.get(PendingUpdateBuffer.EXPIRED));
+  }
+
+  @Test
+  public void testDiscard() {
+    PendingUpdateBuffer buffer = createBuffer(10, 10, OverflowPolicy.DROP_OLDEST);
+    buffer.add("a", new ValueUpdate(1), 0);
+    buffer.add("a", new ValueUpdate(2), 0);
+
+    assertEquals(2, buffer.discard("a"));
+    assertEquals(0, buffer.size());
+    assertEquals(Integer.valueOf(2), dropped.get(PendingUpdateBuffer.DISCARDED));
+  }
+}
@@ -0,0 +1,186 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.c2mon.daq.common.IEquipmentMessageSender;
+import cern.c2mon.daq.rest.address.RestAddressFactory;
+import cern.c2mon.shared.common.datatag.ISourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTag;
+import cern.c2mon.shared.common.datatag.SourceDataTagValue;
+import cern.c2mon.shared.common.datatag.ValueUpdate;
+import cern.c2mon.shared.common.process.IEquipmentConfiguration;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PostSchedulerTest {
+
+  private IEquipmentConfiguration configuration;
+
+  private PostScheduler scheduler;
+
+  @Before
+  public void before() {
+    configuration = EasyMock.createMock(IEquipmentConfiguration.class);
+    scheduler = new PostScheduler(EasyMock.createNiceMock(IEquipmentMessageSender.class), configuration);
+  }
+
+  @After
+  public void after() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testUnknownNameIsLookedUpOnlyOnce() {
+    EasyMock.expect(configuration.getSourceDataTagIdByName("unknown")).andThrow(new IllegalArgumentException()).once();
+    EasyMock.replay(configuration);
+
+    assertFalse(scheduler.tagExist("unknown"));
+    assertNull(scheduler.findIdByName("unknown"));
+    assertTrue(scheduler.getIdsByName(Arrays.asList("unknown")).isEmpty());
+
+    EasyMock.verify(configuration);
+  }
+
+  @Test
+  public void testIndexedTagIsResolvedWithoutLookup() {
+    EasyMock.replay(configuration);
+
+    // tag is unknown, until it gets added to the index
+    scheduler.getTagIndex().markUnknown("name");
+    assertFalse(scheduler.tagExist("name"));
+
+    scheduler.getTagIndex().put(new SourceDataTag(1L, "name", false));
+    assertTrue(scheduler.tagExist("name"));
+    Map<String, Long> ids = scheduler.getIdsByName(Arrays.asList("name"));
+    assertEquals(Long.valueOf(1L), ids.get("name"));
+
+    scheduler.getTagIndex().remove(1L);
+    assertEquals(0, scheduler.getTagIndex().size());
+
+    EasyMock.verify(configuration);
+  }
+
+  @Test
+  public void testRenamedTag() {
+    EasyMock.expect(configuration.getSourceDataTagIdByName("old")).andThrow(new IllegalArgumentException()).once();
+    EasyMock.replay(configuration);
+
+    TagIndex tagIndex = scheduler.getTagIndex();
+    tagIndex.put(new SourceDataTag(1L, "old", false));
+    tagIndex.put(new SourceDataTag(1L, "new", false));
+
+    assertEquals(Long.valueOf(1L), scheduler.findIdByName("new"));
+    assertNull(scheduler.findIdByName("old"));
+
+    EasyMock.verify(configuration);
+  }
+
+  /**
+   * Adds, updates and removes tags from several threads, while other threads are sending values for the same tags
+   */
+  @Test
+  public void testConcurrentConfigurationAndTraffic() throws Exception {
+    final int configThreads = 2;
+    final int trafficThreads = 4;
+    final int tagsPerThread = 100;
+
+    HashMap<String, String> map = new HashMap<>();
+    map.put("mode", "POST");
+    map.put("postFrequency", "100");
+    ISourceDataTag tag = EasyMock.createNiceMock(ISourceDataTag.class);
+    EasyMock.expect(tag.getHardwareAddress()).andReturn(RestAddressFactory.createHardwareAddress(map)).anyTimes();
+    EasyMock.expect(tag.getCurrentValue()).andReturn(new SourceDataTagValue()).anyTimes();
+    EasyMock.expect(configuration.getSourceDataTag(anyLong())).andReturn(tag).anyTimes();
+    EasyMock.replay(configuration, tag);
+
+    ExecutorService executor = Executors.newFixedThreadPool(configThreads + trafficThreads);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicBoolean running = new AtomicBoolean(true);
+    List<Future<?>> futures = new ArrayList<>();
+
+    for (int t = 0; t < configThreads; t++) {
+      final long offset = (long) t * tagsPerThread;
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int round = 0; round < 200; round++) {
+          for (long id = offset; id < offset + tagsPerThread; id++) {
+            scheduler.addTask(id);
+          }
+          // update = remove and add again
+          for (long id = offset; id < offset + tagsPerThread; id += 2) {
+            scheduler.removeTask(id);
+            scheduler.addTask(id);
+          }
+          for (long id = offset; id < offset + tagsPerThread; id++) {
+            scheduler.removeTask(id);
+          }
+        }
+        for (long id = offset; id < offset + tagsPerThread; id++) {
+          scheduler.addTask(id);
+        }
+        return null;
+      }));
+    }
+
+    for (int t = 0; t < trafficThreads; t++) {
+      futures.add(executor.submit(() -> {
+        Random random = new Random();
+        start.await();
+        while (running.get()) {
+          scheduler.sendValueToServer((long) random.nextInt(configThreads * tagsPerThread), new ValueUpdate(1));
+        }
+        return null;
+      }));
+    }
+
+    start.countDown();
+    for (int i = 0; i < configThreads; i++) {
+      futures.get(i).get(60, TimeUnit.SECONDS);
+    }
+    running.set(false);
+    for (Future<?> future : futures) {
+      future.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    for (long id = 0; id < configThreads * tagsPerThread; id++) {
+      assertTrue("Tag #" + id + " is missing", scheduler.contains(id));
+    }
+  }
+}
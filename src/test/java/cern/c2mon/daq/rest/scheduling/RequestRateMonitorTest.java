@@ -0,0 +1,80 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestRateMonitorTest {
+
+  @Test
+  public void testEvenlyDistributedRequests() {
+    RequestRateMonitor monitor = new RequestRateMonitor(100, 10, 0);
+    for (long time = 0; time < 1_000; time += 10) {
+      monitor.record(time);
+    }
+    assertEquals(1.0, monitor.peakToMean(1_000), 0.0001);
+  }
+
+  @Test
+  public void testBurst() {
+    RequestRateMonitor monitor = new RequestRateMonitor(100, 10, 0);
+    for (int i = 0; i < 100; i++) {
+      monitor.record(0);
+    }
+    // all requests within one of the 9 completed slots of the window
+    assertEquals(9.0, monitor.peakToMean(900), 0.0001);
+  }
+
+  @Test
+  public void testOldSlotsAreReused() {
+    RequestRateMonitor monitor = new RequestRateMonitor(100, 10, 0);
+    for (int i = 0; i < 100; i++) {
+      monitor.record(0);
+    }
+    for (long time = 1_000; time < 2_000; time += 10) {
+      monitor.record(time);
+    }
+    assertEquals(1.0, monitor.peakToMean(2_000), 0.0001);
+    assertTrue(Double.isNaN(monitor.peakToMean(5_000)));
+  }
+
+  @Test
+  public void testConcurrentRequestsAreNotLost() throws InterruptedException {
+    RequestRateMonitor monitor = new RequestRateMonitor(100, 10, 0);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      // the threads move to the next slot at different times
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 10_000; j++) {
+          monitor.record(0);
+        }
+        for (int j = 0; j < 5_000; j++) {
+          monitor.record(100);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // 40000 and 20000 requests in the two completed slots
+    assertEquals(4.0 / 3.0, monitor.peakToMean(200), 0.0001);
+  }
+}
@@ -0,0 +1,133 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.scheduling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskRegistryTest {
+
+  private static final int THREADS = 8;
+
+  @Test
+  public void testPutGetRemove() {
+    TaskRegistry registry = new TaskRegistry();
+    ScheduledTask task = () -> true;
+
+    assertNull(registry.put(0L, task));
+    assertNull(registry.put(-1L, ScheduledTask.NONE));
+    assertSame(task, registry.get(0L));
+    assertTrue(registry.contains(-1L));
+    assertEquals(2, registry.size());
+
+    assertSame(ScheduledTask.NONE, registry.put(-1L, task));
+    assertSame(task, registry.remove(-1L));
+    assertNull(registry.remove(-1L));
+    assertFalse(registry.contains(-1L));
+    assertEquals(1, registry.size());
+  }
+
+  /**
+   * Compares the registry with a HashMap over a long sequence of random operations, which also
+   * covers the resizing and the backward shift deletion of the hash tables.
+   */
+  @Test
+  public void testRandomOperations() {
+    TaskRegistry registry = new TaskRegistry(4);
+    Map<Long, ScheduledTask> expected = new HashMap<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 500_000; i++) {
+      long id = random.nextInt(10_000) - 100;
+      switch (random.nextInt(3)) {
+        case 0:
+          ScheduledTask task = () -> false;
+          assertSame(expected.put(id, task), registry.put(id, task));
+          break;
+        case 1:
+          assertSame(expected.remove(id), registry.remove(id));
+          break;
+        default:
+          assertSame(expected.get(id), registry.get(id));
+      }
+    }
+    assertEquals(expected.size(), registry.size());
+  }
+
+  /**
+   * Every thread owns a range of ids, which it adds, replaces and removes,
+   * while all threads are reading the ids of the others.
+   */
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    TaskRegistry registry = new TaskRegistry();
+    int idsPerThread = 2_000;
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger errors = new AtomicInteger();
+
+    Future<?>[] futures = new Future<?>[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final long offset = (long) t * idsPerThread;
+      futures[t] = executor.submit(() -> {
+        Random random = new Random(offset);
+        ScheduledTask own = () -> false;
+        start.await();
+        for (int round = 0; round < 50; round++) {
+          for (long id = offset; id < offset + idsPerThread; id++) {
+            registry.put(id, own);
+            if (registry.get(id) != own) {
+              errors.incrementAndGet();
+            }
+            // read the ids of another thread
+            registry.contains(random.nextInt(THREADS * idsPerThread));
+          }
+          for (long id = offset; id < offset + idsPerThread; id += 2) {
+            if (registry.remove(id) != own) {
+              errors.incrementAndGet();
+            }
+          }
+        }
+        return null;
+      });
+    }
+
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    assertEquals(0, errors.get());
+    assertEquals(THREADS * idsPerThread / 2, registry.size());
+  }
+}
@@ -0,0 +1,61 @@
+/******************************************************************************
+ * Copyright (C) 2010-2018 CERN. All rights not expressly granted are reserved.
+ *
+ * This file is part of the CERN Control and Monitoring Platform 'C2MON'.
+ * C2MON is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the license.
+ *
+ * C2MON is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with C2MON. If not, see <http://www.gnu.org/licenses/>.
+ *****************************************************************************/
+package cern.c2mon.daq.rest.webaccess;
+
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Test;
+
+import cern.c2mon.daq.rest.config.RestDaqProperties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RESTConnectorTest {
+
+  @After
+  public void restoreDefaults() {
+    RESTConnector.configure(new RestDaqProperties.Http());
+  }
+
+  @Test
+  public void configureAppliesPoolSettings() {
+    RestDaqProperties.Http properties = new RestDaqProperties.Http();
+    properties.setMaxConnections(42);
+    properties.setMaxConnectionsPerRoute(7);
+
+    assertTrue(RESTConnector.configure(properties));
+
+    PoolStats stats = RESTConnector.getPoolStats();
+    assertEquals(42, stats.getMax());
+    assertEquals(0, stats.getLeased());
+  }
+
+  @Test
+  public void configureWithEqualSettingsKeepsPool() {
+    RestDaqProperties.Http properties = new RestDaqProperties.Http();
+    properties.setMaxConnections(42);
+    RESTConnector.configure(properties);
+
+    RestDaqProperties.Http equalProperties = new RestDaqProperties.Http();
+    equalProperties.setMaxConnections(42);
+
+    assertFalse(RESTConnector.configure(equalProperties));
+    assertEquals(42, RESTConnector.getPoolStats().getMax());
+  }
+}